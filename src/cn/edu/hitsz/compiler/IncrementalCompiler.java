@@ -0,0 +1,415 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceFile;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IncrementalParser;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 增量编译: 监视源文件, 在其被修改后只对发生变化的语句重新进行词法分析与语法分析
+ * <br>
+ * 源代码在每个分号之后切分为若干条语句 (分号总是单独构成一个词素, 所以切分不影响词法分析的结果).
+ * 每次重新编译时, 先求出新旧源代码的公共前缀与公共后缀, 完全落在其中的语句直接沿用上一次的词法单元与分析结果,
+ * 只有中间发生变化的部分会被重新切分并进行词法分析. 语法分析由 {@link IncrementalParser} 完成, 未变化的语句只需常数时间即可接上.
+ * 分析表与 {@link Main} 相同, 由 {@link Main#loadCompiledTable()} 取得.
+ * <br>
+ * 每条语句的词法单元文本与规约文本以字节数组的形式缓存在语句中, 输出文件从第一处与上一次输出不同的地方开始改写;
+ * 符号表按标识符记录引用它的次数, 只有出现新的标识符或某个标识符不再出现时才重新输出.
+ * <br>
+ * 省下的只是未变化语句的词法分析, 语法分析与文本生成, 每次编译的耗时仍与源文件的大小成正比: 源文件整个读入并与上一次逐字节比较,
+ * 语句列表每次重建, IncrementalParser 要逐条接上所有语句, 输出时也要逐条比较各语句的文本, 修改使长度改变时还要改写到文件末尾.
+ * 对于约 5 MB, 二十万条语句的源文件, 修改一个标识符后重新编译仍需一两百毫秒. 要做到只与修改的范围相关,
+ * 需要按偏移索引语句并在语句边界保存分析栈, 目前没有实现.
+ * <br>
+ * 目前增量编译输出词法单元流, 语义分析前的符号表与规约出的产生式列表, 与 {@link Main} 中对应的输出完全一致.
+ * 语义分析, 中间代码生成与汇编生成尚未实现, 所以暂不参与增量编译, 也就没有中间代码的复用与汇编代码的局部重新生成.
+ *
+ * @author Klasnov
+ */
+public class IncrementalCompiler {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final byte[] EOF_TEXT = (Token.eof() + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+
+    private final Path sourcePath;
+    /** 只用于提供转移表, 每次编译都由它创建一个使用新符号表的分析器, 以免符号表随编辑次数增长 */
+    private final LexicalAnalyzer lexerPrototype;
+    private LexicalAnalyzer lexer;
+    private final IncrementalParser parser;
+    private final boolean splittable;
+
+    /** 上一次编译时的源代码 */
+    private byte[] previous = null;
+    /** 上一次编译时的各条语句, 按在源代码中的顺序排列 */
+    private List<Statement> statements = new ArrayList<>();
+    /** 最近一次编译中重新进行词法分析的语句数 */
+    private int relexedCount;
+
+    /** 各产生式输出到产生式列表中的一行, 按产生式的编号缓存 */
+    private final byte[][] productionLines;
+    private final byte[] beginProductionLine;
+    /** 以 EOF 为向前看符号执行的规约, 及其输出的文本 */
+    private int[] tailReductions = null;
+    private byte[] tailText;
+
+    /** 所有语句中出现的标识符, 及其出现的次数 */
+    private final TreeMap<String, Integer> symbolCounts = new TreeMap<>();
+    /** 标识符的集合是否在上一次输出符号表之后改变过 */
+    private boolean symbolsChanged = true;
+
+    private final ChunkedOutput tokenOutput = new ChunkedOutput(Paths.get(FilePathConfig.TOKEN_PATH));
+    private final ChunkedOutput parserOutput = new ChunkedOutput(Paths.get(FilePathConfig.PARSER_PATH));
+
+    /**
+     * 源代码中的一条语句 (或末尾不以分号结尾的剩余部分)
+     */
+    private static final class Statement {
+        /** 语句的字节数, 包括语句之前的空白 */
+        private final int length;
+        /** 语句的词法单元与语法分析缓存 */
+        private final IncrementalParser.Segment segment;
+        /** 语句中各词法单元输出到词法单元流中的文本 */
+        private final byte[] tokenText;
+        /** 语句中出现的标识符 */
+        private final List<String> symbols;
+        /** 生成 parseText 时语句的规约, 与 segment 中的规约是同一个数组时 parseText 仍然有效 */
+        private int[] renderedBoundary;
+        private int[] renderedReductions;
+        private byte[] parseText;
+
+        private Statement(int length, IncrementalParser.Segment segment, byte[] tokenText, List<String> symbols) {
+            this.length = length;
+            this.segment = segment;
+            this.tokenText = tokenText;
+            this.symbols = symbols;
+        }
+
+        /**
+         * @return 语句的规约输出到产生式列表中的文本
+         */
+        private byte[] parseText(byte[][] productionLines) {
+            final var boundary = segment.boundaryReductions();
+            final var reductions = segment.reductions();
+            if (parseText == null || boundary != renderedBoundary || reductions != renderedReductions) {
+                renderedBoundary = boundary;
+                renderedReductions = reductions;
+                parseText = render(productionLines, boundary, reductions, new byte[0]);
+            }
+            return parseText;
+        }
+    }
+
+    public IncrementalCompiler(String sourcePath) {
+        this.sourcePath = Paths.get(sourcePath);
+        this.lexerPrototype = new LexicalAnalyzer(new SymbolTable());
+        this.splittable = lexerPrototype.canSplitAfter(';');
+        final var table = Main.loadCompiledTable();
+        this.parser = new IncrementalParser(table);
+        this.productionLines = new byte[table.productions().length][];
+        for (final var production : table.productions()) {
+            if (production != null) {
+                productionLines[production.index()] = (production + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        this.beginProductionLine = (GrammarInfo.getBeginProduction() + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        TokenKind.loadTokenKinds();
+        final var compiler = new IncrementalCompiler(FilePathConfig.SRC_CODE_PATH);
+        compiler.compile();
+        compiler.watch();
+    }
+
+    /**
+     * 监视源文件, 每当其被修改时重新编译. 该方法不会返回.
+     */
+    public void watch() throws IOException, InterruptedException {
+        final var directory = sourcePath.toAbsolutePath().getParent();
+        try (final var watcher = FileSystems.getDefault().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                final var key = watcher.take();
+                var changed = false;
+                for (final var event : key.pollEvents()) {
+                    if (event.context() instanceof Path path && path.equals(sourcePath.getFileName())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    try {
+                        compile();
+                    } catch (RuntimeException e) {
+                        // 编辑过程中的源代码可能暂时不合法, 等待下一次修改即可
+                        System.err.println(e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取源文件并进行增量编译, 然后输出结果
+     * <br>
+     * 源文件整个读入, 与上一次的源代码逐字节比较出公共前缀与公共后缀, 所以这一步的耗时与源文件的大小成正比, 只是远小于重新分析.
+     */
+    public void compile() throws IOException {
+        final var begin = System.nanoTime();
+        final var current = Files.readAllBytes(sourcePath);
+        relexedCount = 0;
+        lexer = lexerPrototype.withSymbolTable(new SymbolTable());
+        statements = update(current);
+        previous = current;
+
+        final var segments = statements.stream().map(statement -> statement.segment).toList();
+        final var tail = parser.parse(segments);
+        dump(tail);
+        System.out.printf("Compiled %d statements (%d relexed, %d reparsed) in %.3f ms%n",
+            statements.size(), relexedCount, segments.size() - parser.getReusedCount(),
+            (System.nanoTime() - begin) / 1e6);
+    }
+
+    /**
+     * 根据新的源代码更新语句列表, 沿用公共前缀与公共后缀中的语句
+     *
+     * @param current 新的源代码
+     * @return 新的语句列表
+     */
+    private List<Statement> update(byte[] current) {
+        if (previous == null || !splittable) {
+            final var result = split(current, 0, current.length);
+            replace(statements, result);
+            return result;
+        }
+        final var limit = Math.min(previous.length, current.length);
+        final var mismatch = Arrays.mismatch(previous, current);
+        final var prefix = mismatch < 0 ? limit : mismatch;
+        int suffix = 0;
+        while (suffix < limit - prefix
+            && previous[previous.length - 1 - suffix] == current[current.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        // 前缀中以分号结尾的语句, 以及其前一个分号也在后缀中的语句可以沿用
+        final var result = new ArrayList<Statement>();
+        int kept = 0;
+        int offset = 0;
+        while (kept < statements.size() && offset + statements.get(kept).length <= prefix
+            && previous[offset + statements.get(kept).length - 1] == ';') {
+            result.add(statements.get(kept));
+            offset += statements.get(kept).length;
+            kept++;
+        }
+        int tail = statements.size();
+        int tailOffset = previous.length;
+        while (tail > kept && tailOffset - statements.get(tail - 1).length > previous.length - suffix) {
+            tail--;
+            tailOffset -= statements.get(tail).length;
+        }
+
+        final var middleEnd = current.length - (previous.length - tailOffset);
+        final var middle = split(current, offset, middleEnd);
+        replace(statements.subList(kept, tail), middle);
+        result.addAll(middle);
+        result.addAll(statements.subList(tail, statements.size()));
+        return result;
+    }
+
+    /**
+     * 将源代码的 [from, to) 部分在每个分号之后切分为语句, 并分别进行词法分析
+     */
+    private List<Statement> split(byte[] current, int from, int to) {
+        final var result = new ArrayList<Statement>();
+        int start = from;
+        for (int idx = from; idx < to; idx++) {
+            if (splittable && current[idx] == ';') {
+                result.add(lex(current, start, idx + 1));
+                start = idx + 1;
+            }
+        }
+        if (start < to) {
+            result.add(lex(current, start, to));
+        }
+        return result;
+    }
+
+    private Statement lex(byte[] current, int from, int to) {
+        lexer.loadSource(SourceFile.wrap(Arrays.copyOfRange(current, from, to)));
+        lexer.run();
+        final var tokens = lexer.getTokens();
+        tokens.trimToSize();
+        relexedCount++;
+        final var tokenText = new StringBuilder();
+        final var symbols = new ArrayList<String>();
+        for (int idx = 0; idx + 1 < tokens.size(); idx++) {
+            tokenText.append(tokens.get(idx)).append(LINE_SEPARATOR);
+            if (tokens.symbol(idx) >= 0) {
+                symbols.add(tokens.text(idx));
+            }
+        }
+        return new Statement(to - from, new IncrementalParser.Segment(tokens),
+            tokenText.toString().getBytes(StandardCharsets.UTF_8), symbols);
+    }
+
+    /**
+     * 按被替换与新加入的语句更新标识符的出现次数. 在新语句全部词法分析成功后才调用, 以免分析失败时计数不一致
+     */
+    private void replace(List<Statement> removed, List<Statement> added) {
+        for (final var statement : removed) {
+            for (final var symbol : statement.symbols) {
+                if (symbolCounts.merge(symbol, -1, Integer::sum) == 0) {
+                    symbolCounts.remove(symbol);
+                    symbolsChanged = true;
+                }
+            }
+        }
+        for (final var statement : added) {
+            for (final var symbol : statement.symbols) {
+                if (symbolCounts.merge(symbol, 1, Integer::sum) == 1) {
+                    symbolsChanged = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 输出结果. 各条语句的文本都已缓存, 这里只需按顺序收集, 再交给各输出文件比较并改写不同的部分
+     *
+     * @param tail 以 EOF 为向前看符号执行的规约
+     */
+    private void dump(int[] tail) {
+        final var tokenChunks = new ArrayList<byte[]>(statements.size() + 1);
+        final var parserChunks = new ArrayList<byte[]>(statements.size() + 1);
+        for (final var statement : statements) {
+            tokenChunks.add(statement.tokenText);
+            parserChunks.add(statement.parseText(productionLines));
+        }
+        tokenChunks.add(EOF_TEXT);
+        if (!Arrays.equals(tail, tailReductions)) {
+            tailReductions = tail;
+            tailText = render(productionLines, tail, new int[0], beginProductionLine);
+        }
+        parserChunks.add(tailText);
+        tokenOutput.write(tokenChunks);
+        parserOutput.write(parserChunks);
+
+        if (symbolsChanged) {
+            // 符号表的输出格式由 SymbolTable 决定, 标识符的集合改变时才重新输出
+            final var symbolTable = new SymbolTable();
+            for (final var symbol : symbolCounts.keySet()) {
+                symbolTable.intern(symbol);
+            }
+            symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+            symbolsChanged = false;
+        }
+    }
+
+    /**
+     * @return 依次拼接 first 与 second 中各产生式所在的行, 再接上 last
+     */
+    private static byte[] render(byte[][] productionLines, int[] first, int[] second, byte[] last) {
+        int length = last.length;
+        for (final var production : first) {
+            length += productionLines[production].length;
+        }
+        for (final var production : second) {
+            length += productionLines[production].length;
+        }
+        final var text = new byte[length];
+        int at = 0;
+        for (final var production : first) {
+            System.arraycopy(productionLines[production], 0, text, at, productionLines[production].length);
+            at += productionLines[production].length;
+        }
+        for (final var production : second) {
+            System.arraycopy(productionLines[production], 0, text, at, productionLines[production].length);
+            at += productionLines[production].length;
+        }
+        System.arraycopy(last, 0, text, at, last.length);
+        return text;
+    }
+
+    /**
+     * 由若干段字节依次拼接而成的输出文件
+     * <br>
+     * 记住上一次写入的各段, 再次写入时跳过公共前缀与公共后缀中的段: 中间部分的长度不变时原地改写, 否则从第一个不同的段开始改写到文件末尾.
+     * 段先按引用比较, 未变化的语句提供的总是同一个数组, 所以通常不必比较内容. 文件不存在或其长度与上一次写入的不同时,
+     * 说明它被别处改写过, 此时整个重新写入.
+     */
+    private static final class ChunkedOutput {
+        private final Path path;
+        private List<byte[]> chunks = List.of();
+        private long size = -1;
+
+        private ChunkedOutput(Path path) {
+            this.path = path;
+        }
+
+        private void write(List<byte[]> next) {
+            try (final var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                int prefix = 0;
+                int suffix = 0;
+                if (channel.size() == size) {
+                    final var limit = Math.min(chunks.size(), next.size());
+                    while (prefix < limit && same(chunks.get(prefix), next.get(prefix))) {
+                        prefix++;
+                    }
+                    while (suffix < limit - prefix
+                        && same(chunks.get(chunks.size() - 1 - suffix), next.get(next.size() - 1 - suffix))) {
+                        suffix++;
+                    }
+                } else {
+                    chunks = List.of();
+                }
+
+                long offset = 0;
+                for (int idx = 0; idx < prefix; idx++) {
+                    offset += chunks.get(idx).length;
+                }
+                final var oldMiddle = length(chunks, prefix, chunks.size() - suffix);
+                final var newMiddle = length(next, prefix, next.size() - suffix);
+                // 中间部分的长度不变时, 后缀中的段仍在原来的位置上
+                final var end = oldMiddle == newMiddle ? next.size() - suffix : next.size();
+                final var out = new BufferedOutputStream(Channels.newOutputStream(channel.position(offset)), 1 << 16);
+                for (int idx = prefix; idx < end; idx++) {
+                    out.write(next.get(idx));
+                }
+                out.flush();
+                size = offset + newMiddle + length(next, next.size() - suffix, next.size());
+                channel.truncate(size);
+                chunks = List.copyOf(next);
+            } catch (IOException e) {
+                size = -1;
+                throw new RuntimeException("IO Exception for " + path, e);
+            }
+        }
+
+        private static boolean same(byte[] former, byte[] latter) {
+            return former == latter || Arrays.equals(former, latter);
+        }
+
+        private static long length(List<byte[]> chunks, int from, int to) {
+            long length = 0;
+            for (int idx = from; idx < to; idx++) {
+                length += chunks.get(idx).length;
+            }
+            return length;
+        }
+    }
+}
@@ -7,7 +7,10 @@ import cn.edu.hitsz.compiler.parser.IRGenerator;
 import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.generated.GeneratedEngine;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
 import cn.edu.hitsz.compiler.parser.table.TableGenerator;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
@@ -34,23 +37,24 @@ public class Main {
         lexer.run();
         lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
         final var tokens = lexer.getTokens();
-        symbolTable.anlTkn(tokens);
         symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
 
-        // Construct LR analysis table from grammar.txt
-        final var tableGenerator = new TableGenerator();
-        tableGenerator.run();
-        final var lrTable = tableGenerator.getTable();
-        lrTable.dumpTable("data/out/lrTable.csv");
+        final var compiledTable = loadCompiledTable();
 
         // Load LR analysis driver
         final var parser = new SyntaxAnalyzer(symbolTable);
         parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
+        parser.loadCompiledTable(compiledTable);
+        // Use the pre-generated engine only while it still matches the table; after grammar.txt or coding_map.csv
+        // changes, fall back to interpreting the table until EngineGenerator is run again
+        final var engine = new GeneratedEngine();
+        if (engine.fingerprint() == compiledTable.fingerprint()) {
+            parser.setEngine(engine);
+        }
 
         // Join the Observer that generates the list of specifications
         final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
-        parser.registerObserver(productionCollector);
+        parser.registerReductionObserver(productionCollector);
 
         // Add Observer for semantic checking
         final var semanticAnalyzer = new SemanticAnalyzer();
@@ -79,4 +83,22 @@ public class Main {
         asmGenerator.run();
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
     }
+
+    /**
+     * Load the compiled table from the binary cache, or construct LALR(1) analysis table from grammar.txt
+     * (with statement lists rewritten to keep the parse stack shallow) when grammar.txt or coding_map.csv has changed.
+     * Shared with {@link IncrementalCompiler} so that both drivers parse with the same table.
+     */
+    static CompiledTable loadCompiledTable() {
+        final var cacheKey = TableCache.key(TableGenerator.Method.LALR1, true, true);
+        return TableCache.load(FilePathConfig.TABLE_CACHE_PATH, cacheKey).orElseGet(() -> {
+            final var tableGenerator = new TableGenerator(true, TableGenerator.Method.LALR1);
+            tableGenerator.run();
+            final var lrTable = tableGenerator.getTable();
+            lrTable.dumpTable("data/out/lrTable.csv");
+            final var table = tableGenerator.getCompiledTable(true);
+            TableCache.store(FilePathConfig.TABLE_CACHE_PATH, cacheKey, table);
+            return table;
+        });
+    }
 }
@@ -14,20 +14,36 @@ public class IRVariable implements IRValue {
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
     public static IRVariable named(String name) {
-        return new IRVariable(name);
+        return new IRVariable(name, -1);
+    }
+
+    /**
+     * @param name     源语言中变量的名字
+     * @param symbolId 该变量在符号表中的 id
+     * @return 一个对应于源语言中具体变量的 IRVariable, 后端可以用其符号 id 作为数组下标
+     */
+    public static IRVariable named(String name, int symbolId) {
+        return new IRVariable(name, symbolId);
     }
 
     /**
      * @return 一个对应于源语言中的临时变量的新 IRVariable
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        return new IRVariable("$" + count++, -1);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return 该变量在符号表中的 id, 临时变量或未知时为 -1
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
     public boolean isTemp() {
         return name.startsWith("$");
     }
@@ -51,10 +67,12 @@ public class IRVariable implements IRValue {
         return name.hashCode();
     }
 
-    private IRVariable(String name) {
+    private IRVariable(String name, int symbolId) {
         this.name = name;
+        this.symbolId = symbolId;
     }
 
     private final String name;
+    private final int symbolId;
     private static int count = 0;
 }
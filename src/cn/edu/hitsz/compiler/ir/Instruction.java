@@ -93,6 +93,28 @@ public class Instruction {
         return Collections.unmodifiableList(operands);
     }
 
+    /**
+     * 记录该指令对应的源代码位置, 仅在开启了位置跟踪时使用
+     *
+     * @param offset 对应的源代码起始偏移
+     * @return 该指令本身
+     */
+    public Instruction setPosition(long offset) {
+        this.position = offset;
+        return this;
+    }
+
+    /**
+     * @return 该指令对应的源代码起始偏移, 未记录时为 -1
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public boolean hasPosition() {
+        return position >= 0;
+    }
+
     private Instruction(InstructionKind kind, IRVariable result, List<IRValue> operands) {
         this.kind = kind;
         this.result = result;
@@ -102,6 +124,7 @@ public class Instruction {
     private final InstructionKind kind;
     private final IRVariable result;
     private final List<IRValue> operands;
+    private long position = -1;
 
     private void ensureKindMatch(Set<InstructionKind> targetKinds) {
         final var kind = getKind();
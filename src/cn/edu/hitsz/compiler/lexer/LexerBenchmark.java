@@ -0,0 +1,104 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 词法分析器的基准测试, 比较开启与关闭 SWAR 快速扫描时的耗时
+ * <br>
+ * 输入由固定的随机种子生成, 每次运行的内容完全相同, 不读取任何文件. 共有两种输入:
+ * wide 中的标识符长 24 到 40 个字符, 语句之间有 16 到 64 个空白, 快速扫描主要作用于这种输入;
+ * short 与 data/in 中的样例相同, 标识符只有一两个字符, 空白都是单个空格, 耗时主要在于逐个词法单元的工作.
+ * <br>
+ * 每种输入上交替运行两种扫描方式, 先预热若干轮, 再计时若干轮, 每次都使用新的符号表, 输出最短与中位耗时及吞吐量.
+ * 用法: {@code java cn.edu.hitsz.compiler.lexer.LexerBenchmark [输入的兆字节数 [预热次数 [计时次数]]]}, 默认为 12, 5, 10.
+ *
+ * @author Klasnov
+ * @see LexicalAnalyzer#setFastScan(boolean)
+ */
+public class LexerBenchmark {
+    private static final long SEED = 0x5eed_1e8L;
+    /** 标识符的字符, 首字符只取前 52 个字母 */
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String[] OPERATORS = {" + ", " - ", " * "};
+
+    private LexerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        final var megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        final var warmups = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final var runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        TokenKind.loadTokenKinds();
+        final var size = megabytes << 20;
+        for (final var wide : new boolean[]{true, false}) {
+            final var input = generate(size, wide);
+            final var times = measure(input, warmups, runs);
+            for (int mode = 0; mode < 2; mode++) {
+                Arrays.sort(times[mode]);
+                final var best = times[mode][0] / 1e6;
+                System.out.printf("%-5s fastScan=%-5b %d bytes: best %.1f ms, median %.1f ms, %.0f MB/s%n",
+                    wide ? "wide" : "short", mode == 1, input.length, best, times[mode][runs / 2] / 1e6,
+                    input.length / (double) (1 << 20) / (best / 1000));
+            }
+        }
+    }
+
+    /**
+     * 交替运行关闭与开启快速扫描的词法分析, 使两者经历相同的 JIT 编译过程
+     *
+     * @return 以是否开启快速扫描 (0 为关闭, 1 为开启) 为第一维下标, 每次计时的耗时, 单位为纳秒
+     */
+    private static long[][] measure(byte[] input, int warmups, int runs) {
+        final var times = new long[2][runs];
+        for (int run = -warmups; run < runs; run++) {
+            for (int mode = 0; mode < 2; mode++) {
+                final var lexer = new LexicalAnalyzer(new SymbolTable());
+                lexer.loadSource(SourceFile.wrap(input));
+                lexer.setFastScan(mode == 1);
+                final var start = System.nanoTime();
+                lexer.run();
+                final var elapsed = System.nanoTime() - start;
+                if (run >= 0) {
+                    times[mode][run] = elapsed;
+                }
+            }
+        }
+        return times;
+    }
+
+    /**
+     * 生成由声明与赋值语句组成的输入, 变量取自一个固定的名字表, 使符号表的大小与输入的长度无关
+     *
+     * @param size 输入的最小字节数
+     * @param wide 是否使用长标识符与宽空白
+     * @return 源代码
+     */
+    private static byte[] generate(int size, boolean wide) {
+        final var random = new Random(SEED);
+        final var names = new String[256];
+        for (int idx = 0; idx < names.length; idx++) {
+            final var length = wide ? 24 + random.nextInt(17) : 1 + random.nextInt(2);
+            final var name = new StringBuilder();
+            for (int at = 0; at < length; at++) {
+                name.append(LETTERS.charAt(random.nextInt(at == 0 ? 52 : LETTERS.length())));
+            }
+            names[idx] = name.toString();
+        }
+        final var out = new StringBuilder(size + 256);
+        while (out.length() < size) {
+            final var target = names[random.nextInt(names.length)];
+            if (random.nextInt(8) == 0) {
+                out.append("int ").append(target).append(';');
+            } else {
+                out.append(target).append(" = ").append(names[random.nextInt(names.length)])
+                    .append(OPERATORS[random.nextInt(OPERATORS.length)]).append(random.nextInt(100_000)).append(';');
+            }
+            out.append(wide ? " ".repeat(15 + random.nextInt(49)) : " ").append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,392 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.*;
+
+/**
+ * 词法分析器生成器
+ * <br>
+ * 读取词法规则文件 (token_spec.txt), 将每条规则的正则表达式经 Thompson 构造转换为 NFA, 再经子集构造得到 DFA, 最后按 Moore 算法最小化,
+ * 输出以 int 数组表示的 LexerTable 供 LexicalAnalyzer 使用. 这样增加关键字或运算符只需修改规则文件 (以及码点文件) 即可.
+ * <br>
+ * 规则文件的每一行形如 {@code <TokenKind 标识符> <simple|normal|skip> <正则表达式>}, 空行与以 # 开头的行会被忽略.
+ * 同一个词素被多条规则匹配时, 文件中靠前的规则优先. 正则表达式支持连接, {@code |}, {@code *}, {@code +}, {@code ?}, 括号,
+ * 形如 {@code [a-z0-9]} 的字符集合以及 {@code \} 转义 ({@code \t}, {@code \n}, {@code \r} 以及其它字符本身), 且只处理 ASCII 字符.
+ *
+ * @author Klasnov
+ * @see LexerTable
+ */
+public class LexerGenerator {
+    private static final int ALPHABET = 128;
+
+    /**
+     * 读取规则文件并生成转移表, 调用前须先调用 {@link TokenKind#loadTokenKinds()}
+     *
+     * @param path 规则文件路径
+     * @return 最小化后的 DFA 转移表
+     */
+    public static LexerTable generate(String path) {
+        final var generator = new LexerGenerator();
+        for (final var rawLine : FileUtils.readLines(path)) {
+            final var line = rawLine.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final var words = line.split("\\s+", 3);
+            if (words.length != 3) {
+                throw new RuntimeException("Illegal lexical rule: " + line);
+            }
+            generator.addRule(words[0], words[1], words[2]);
+        }
+        return generator.build();
+    }
+
+    //==================== 规则与 NFA ==============================//
+
+    /** 每条规则接受的码点, 或 LexerTable.SKIP */
+    private final List<Integer> ruleCodes = new ArrayList<>();
+    private final Set<Integer> codes = new HashSet<>();
+    private final Set<Integer> codesWithText = new HashSet<>();
+
+    /** NFA 状态的 epsilon 转移 */
+    private final List<List<Integer>> epsilon = new ArrayList<>();
+    /** NFA 状态的字符转移, Thompson 构造保证每个状态至多有一条字符转移 */
+    private final List<BitSet> edgeChars = new ArrayList<>();
+    private final List<Integer> edgeTarget = new ArrayList<>();
+    /** NFA 状态接受的规则编号, 不接受为 -1 */
+    private final List<Integer> acceptRule = new ArrayList<>();
+    private final List<Integer> ruleStarts = new ArrayList<>();
+
+    private String regex;
+    private int cursor;
+
+    private LexerGenerator() {
+    }
+
+    private void addRule(String kindId, String mode, String pattern) {
+        final int code = switch (mode) {
+            case "skip" -> LexerTable.SKIP;
+            case "simple", "normal" -> {
+                final var kind = TokenKind.fromString(kindId);
+                codes.add(kind.getCode());
+                if (mode.equals("normal")) {
+                    codesWithText.add(kind.getCode());
+                }
+                yield kind.getCode();
+            }
+            default -> throw new RuntimeException("Unknown rule mode: " + mode);
+        };
+
+        regex = pattern;
+        cursor = 0;
+        final var fragment = parseAlternation();
+        if (cursor != regex.length()) {
+            throw new RuntimeException("Unexpected '%c' in regex %s".formatted(regex.charAt(cursor), regex));
+        }
+
+        acceptRule.set(fragment[1], ruleCodes.size());
+        ruleCodes.add(code);
+        ruleStarts.add(fragment[0]);
+    }
+
+    private int newState() {
+        epsilon.add(new ArrayList<>());
+        edgeChars.add(null);
+        edgeTarget.add(-1);
+        acceptRule.add(-1);
+        return epsilon.size() - 1;
+    }
+
+    /**
+     * @param chars 转移字符集合
+     * @return 由一条字符转移构成的 NFA 片段 {起始状态, 终止状态}
+     */
+    private int[] charFragment(BitSet chars) {
+        final int from = newState(), to = newState();
+        edgeChars.set(from, chars);
+        edgeTarget.set(from, to);
+        return new int[]{from, to};
+    }
+
+    private int[] parseAlternation() {
+        var result = parseConcatenation();
+        while (cursor < regex.length() && regex.charAt(cursor) == '|') {
+            cursor++;
+            final var right = parseConcatenation();
+            final int from = newState(), to = newState();
+            epsilon.get(from).addAll(List.of(result[0], right[0]));
+            epsilon.get(result[1]).add(to);
+            epsilon.get(right[1]).add(to);
+            result = new int[]{from, to};
+        }
+        return result;
+    }
+
+    private int[] parseConcatenation() {
+        int[] result = null;
+        while (cursor < regex.length() && regex.charAt(cursor) != '|' && regex.charAt(cursor) != ')') {
+            final var next = parseRepetition();
+            if (result == null) {
+                result = next;
+            } else {
+                epsilon.get(result[1]).add(next[0]);
+                result = new int[]{result[0], next[1]};
+            }
+        }
+        if (result == null) {
+            // 空串
+            final int state = newState();
+            result = new int[]{state, state};
+        }
+        return result;
+    }
+
+    private int[] parseRepetition() {
+        var result = parseAtom();
+        while (cursor < regex.length() && "*+?".indexOf(regex.charAt(cursor)) >= 0) {
+            final var op = regex.charAt(cursor++);
+            final int from = newState(), to = newState();
+            epsilon.get(from).add(result[0]);
+            epsilon.get(result[1]).add(to);
+            if (op != '+') {
+                epsilon.get(from).add(to);
+            }
+            if (op != '?') {
+                epsilon.get(result[1]).add(result[0]);
+            }
+            result = new int[]{from, to};
+        }
+        return result;
+    }
+
+    private int[] parseAtom() {
+        final var c = regex.charAt(cursor++);
+        switch (c) {
+            case '(' -> {
+                final var inner = parseAlternation();
+                expect(')');
+                return inner;
+            }
+            case '[' -> {
+                final var chars = new BitSet(ALPHABET);
+                while (cursor < regex.length() && regex.charAt(cursor) != ']') {
+                    final var low = parseClassChar();
+                    if (cursor + 1 < regex.length() && regex.charAt(cursor) == '-' && regex.charAt(cursor + 1) != ']') {
+                        cursor++;
+                        chars.set(low, parseClassChar() + 1);
+                    } else {
+                        chars.set(low);
+                    }
+                }
+                expect(']');
+                return charFragment(chars);
+            }
+            case '\\' -> {
+                final var chars = new BitSet(ALPHABET);
+                chars.set(parseEscape());
+                return charFragment(chars);
+            }
+            default -> {
+                final var chars = new BitSet(ALPHABET);
+                chars.set(checkAscii(c));
+                return charFragment(chars);
+            }
+        }
+    }
+
+    private char parseClassChar() {
+        final var c = regex.charAt(cursor++);
+        return c == '\\' ? parseEscape() : checkAscii(c);
+    }
+
+    private char parseEscape() {
+        if (cursor >= regex.length()) {
+            throw new RuntimeException("Dangling '\\' in regex " + regex);
+        }
+        return switch (regex.charAt(cursor++)) {
+            case 't' -> '\t';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            default -> checkAscii(regex.charAt(cursor - 1));
+        };
+    }
+
+    private char checkAscii(char c) {
+        if (c >= ALPHABET) {
+            throw new RuntimeException("Only ASCII characters are allowed in regex " + regex);
+        }
+        return c;
+    }
+
+    private void expect(char c) {
+        if (cursor >= regex.length() || regex.charAt(cursor) != c) {
+            throw new RuntimeException("Expect '%c' in regex %s".formatted(c, regex));
+        }
+        cursor++;
+    }
+
+    //==================== 子集构造与最小化 ==============================//
+
+    private LexerTable build() {
+        // 全局起始状态经 epsilon 转移到每条规则的起始状态
+        final int start = newState();
+        epsilon.get(start).addAll(ruleStarts);
+
+        // 按 "属于哪些字符转移" 对字符分组, 同组字符在 DFA 中的行为完全一致, 不属于任何转移的字符归入字符类 0
+        final var charClass = new int[256];
+        final var signatures = new HashMap<BitSet, Integer>();
+        signatures.put(new BitSet(), 0);
+        for (int c = 0; c < ALPHABET; c++) {
+            final var signature = new BitSet();
+            for (int state = 0; state < edgeChars.size(); state++) {
+                final var chars = edgeChars.get(state);
+                if (chars != null && chars.get(c)) {
+                    signature.set(state);
+                }
+            }
+            charClass[c] = signatures.computeIfAbsent(signature, key -> signatures.size());
+        }
+        final int classCount = signatures.size();
+        final var representative = new int[classCount];
+        for (int c = ALPHABET - 1; c >= 0; c--) {
+            representative[charClass[c]] = c;
+        }
+
+        // 子集构造, DFA 状态 0 为空集 (死状态)
+        final var subsets = new ArrayList<BitSet>();
+        final var subsetIndex = new HashMap<BitSet, Integer>();
+        final var rows = new ArrayList<int[]>();
+        final var initSubset = closure(new BitSet(), start);
+        for (final var subset : List.of(new BitSet(), initSubset)) {
+            subsetIndex.put(subset, subsets.size());
+            subsets.add(subset);
+        }
+        for (int idx = 0; idx < subsets.size(); idx++) {
+            final var row = new int[classCount];
+            if (idx != LexerTable.DEAD) {
+                for (int cls = 1; cls < classCount; cls++) {
+                    final var target = new BitSet();
+                    final var subset = subsets.get(idx);
+                    for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+                        final var chars = edgeChars.get(state);
+                        if (chars != null && chars.get(representative[cls])) {
+                            closure(target, edgeTarget.get(state));
+                        }
+                    }
+                    final var next = subsetIndex.computeIfAbsent(target, key -> {
+                        subsets.add(key);
+                        return subsets.size() - 1;
+                    });
+                    row[cls] = next;
+                }
+            }
+            rows.add(row);
+        }
+
+        // 每个 DFA 状态接受其包含的 NFA 状态中最靠前的规则
+        final var acceptOf = new int[subsets.size()];
+        for (int idx = 0; idx < subsets.size(); idx++) {
+            int rule = Integer.MAX_VALUE;
+            final var subset = subsets.get(idx);
+            for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+                if (acceptRule.get(state) >= 0) {
+                    rule = Math.min(rule, acceptRule.get(state));
+                }
+            }
+            acceptOf[idx] = rule == Integer.MAX_VALUE ? LexerTable.REJECT : ruleCodes.get(rule);
+        }
+
+        return minimize(rows, acceptOf, charClass, classCount);
+    }
+
+    /**
+     * 将 {@code state} 的 epsilon 闭包并入 {@code result}
+     */
+    private BitSet closure(BitSet result, int state) {
+        final var unexpanded = new ArrayDeque<Integer>();
+        if (!result.get(state)) {
+            result.set(state);
+            unexpanded.add(state);
+        }
+        while (!unexpanded.isEmpty()) {
+            for (final var next : epsilon.get(unexpanded.pollFirst())) {
+                if (!result.get(next)) {
+                    result.set(next);
+                    unexpanded.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moore 算法: 先按接受的码点划分状态, 再不断按 "各字符类转移到的块" 细分, 直到块数不再变化
+     */
+    private LexerTable minimize(List<int[]> rows, int[] acceptOf, int[] charClass, int classCount) {
+        final int stateCount = rows.size();
+        var block = new int[stateCount];
+        int blockCount;
+        {
+            final var initial = new HashMap<Integer, Integer>();
+            for (int state = 0; state < stateCount; state++) {
+                block[state] = initial.computeIfAbsent(acceptOf[state], key -> initial.size());
+            }
+            blockCount = initial.size();
+        }
+        while (true) {
+            final var refined = new HashMap<List<Integer>, Integer>();
+            final var next = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                final var signature = new ArrayList<Integer>(classCount + 1);
+                signature.add(block[state]);
+                for (final var target : rows.get(state)) {
+                    signature.add(block[target]);
+                }
+                next[state] = refined.computeIfAbsent(signature, key -> refined.size());
+            }
+            block = next;
+            if (refined.size() == blockCount) {
+                break;
+            }
+            blockCount = refined.size();
+        }
+
+        // 重新编号: 死状态所在的块为 0, 其余按状态顺序编号
+        final var renumber = new int[blockCount];
+        Arrays.fill(renumber, -1);
+        renumber[block[LexerTable.DEAD]] = LexerTable.DEAD;
+        int count = 1;
+        for (int state = 0; state < stateCount; state++) {
+            if (renumber[block[state]] < 0) {
+                renumber[block[state]] = count++;
+            }
+        }
+
+        final var transitions = new int[count * classCount];
+        final var accept = new int[count];
+        for (int state = 0; state < stateCount; state++) {
+            final int target = renumber[block[state]];
+            accept[target] = acceptOf[state];
+            final var row = rows.get(state);
+            for (int cls = 0; cls < classCount; cls++) {
+                transitions[target * classCount + cls] = renumber[block[row[cls]]];
+            }
+        }
+
+        final int maxCode = codes.stream().mapToInt(Integer::intValue).max().orElse(0);
+        final var withText = new boolean[maxCode + 1];
+        codesWithText.forEach(code -> withText[code] = true);
+
+        final var runRanges = new int[count];
+        final var runConstants = new long[count * LexerTable.MAX_RUN_RANGES * 2];
+        final var constants = new long[LexerTable.MAX_RUN_RANGES * 2];
+        for (int state = 1; state < count; state++) {
+            runRanges[state] = LexerTable.computeRun(transitions, charClass, classCount, state, constants);
+            System.arraycopy(constants, 0, runConstants, state * constants.length, constants.length);
+        }
+
+        return new LexerTable(charClass, classCount, transitions, renumber[block[1]], accept, withText,
+            runRanges, runConstants);
+    }
+}
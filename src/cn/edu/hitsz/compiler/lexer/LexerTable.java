@@ -0,0 +1,144 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 由 LexerGenerator 生成的最小化 DFA 转移表
+ * <br>
+ * 字符先经 charClass 映射为字符类, 再以 {@code transitions[state * classCount + charClass]} 查找下一状态.
+ * 状态 0 固定为死状态 (所有转移都回到自身), 扫描时遇到它即说明当前词素已无法继续扩展.
+ * accept 数组记录每个状态接受的词法单元类型的码点, 不接受的状态为 REJECT, 接受后应丢弃的状态 (空白等) 为 SKIP.
+ * <br>
+ * 标识符, 数字与空白等词素的主体都是某个状态在一组字符上的自环. 若自环字符可以表示为至多 MAX_RUN_RANGES 个 ASCII 区间,
+ * 则为该状态预先计算好 SWAR 常量, 扫描时可以借助 {@link #skipRun} 一次判断 8 个字节, 快速找到自环结束的位置.
+ *
+ * @param charClass   字符 (按字节取值, 0-255) 到字符类的映射, 不出现在任何规则中的字符都属于字符类 0
+ * @param classCount  字符类的数量
+ * @param transitions 按行展开的转移表
+ * @param startState  起始状态
+ * @param accept      每个状态接受的词法单元类型的码点
+ * @param withText    码点对应的词法单元是否需要保留词素文本
+ * @param runRanges   每个状态自环字符的区间数, 为 0 表示该状态不使用快速扫描
+ * @param runConstants 每个状态各区间的 SWAR 常量, 每个状态占 MAX_RUN_RANGES * 2 个元素
+ * @author Klasnov
+ * @see LexerGenerator
+ */
+public record LexerTable(int[] charClass,
+                         int classCount,
+                         int[] transitions,
+                         int startState,
+                         int[] accept,
+                         boolean[] withText,
+                         int[] runRanges,
+                         long[] runConstants) {
+    /** 死状态 */
+    public static final int DEAD = 0;
+    /** 不接受任何词法单元 */
+    public static final int REJECT = Integer.MIN_VALUE;
+    /** 接受后丢弃 */
+    public static final int SKIP = Integer.MIN_VALUE + 1;
+    /** 可以使用快速扫描的自环字符区间数上限 */
+    public static final int MAX_RUN_RANGES = 4;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * 为某个状态计算快速扫描所需的 SWAR 常量
+     *
+     * @param transitions 转移表
+     * @param charClass   字符类映射
+     * @param classCount  字符类数量
+     * @param state       状态
+     * @param constants   存放结果的数组, 第 i 个区间 [low, high] 的两个常量存放在 {@code 2 * i} 与 {@code 2 * i + 1} 处
+     * @return 自环字符的区间数, 无法使用快速扫描时为 0
+     */
+    static int computeRun(int[] transitions, int[] charClass, int classCount, int state, long[] constants) {
+        int ranges = 0;
+        int c = 1;
+        while (c < 128) {
+            if (transitions[state * classCount + charClass[c]] != state) {
+                c++;
+                continue;
+            }
+            final int low = c;
+            while (c < 128 && transitions[state * classCount + charClass[c]] == state) {
+                c++;
+            }
+            if (ranges == MAX_RUN_RANGES) {
+                return 0;
+            }
+            // 对于 low - 1 < b < high + 1, 以下两个常量使 skipRun 中对应字节的最高位为 1
+            constants[2 * ranges] = ONES * (127 + c);
+            constants[2 * ranges + 1] = ONES * (127 - (low - 1));
+            ranges++;
+        }
+        return ranges;
+    }
+
+    /**
+     * 从 {@code from} 开始跳过 {@code state} 的自环字符, 每次处理 8 个字节, 不足 8 个字节的部分留给调用者逐个扫描
+     *
+     * @param window 小端序的窗口
+     * @param from   起始下标
+     * @param limit  窗口内需要扫描的字节数
+     * @param state  当前状态, 须满足 {@code runRanges[state] > 0}
+     * @return 第一个不属于自环的字节的下标, 或剩余字节不足 8 个时的位置
+     */
+    public int skipRun(ByteBuffer window, int from, int limit, int state) {
+        final int ranges = runRanges[state];
+        final int base = state * MAX_RUN_RANGES * 2;
+        int pos = from;
+        while (pos + Long.BYTES <= limit) {
+            final long word = window.getLong(pos);
+            final long low = word & LOW_SEVEN_BITS;
+            long inside = 0;
+            for (int idx = 0; idx < ranges; idx++) {
+                inside |= (runConstants[base + 2 * idx] - low) & (low + runConstants[base + 2 * idx + 1]);
+            }
+            final long outside = ~(inside & ~word) & HIGH_BITS;
+            if (outside != 0) {
+                return pos + (Long.numberOfTrailingZeros(outside) >>> 3);
+            }
+            pos += Long.BYTES;
+        }
+        return pos;
+    }
+
+    /**
+     * @return DFA 的状态数量 (包括死状态)
+     */
+    public int stateCount() {
+        return accept.length;
+    }
+
+    /**
+     * 判断某个字符是否总是单独构成一个词素: 它只能从起始状态转移到一个接受状态, 且之后不能再接任何字符.
+     * 对于这样的字符, 其后面的位置一定是某个词素的开头, 因此可以作为源代码的切分点.
+     *
+     * @param c 字符
+     * @return 是否总是单独构成一个词素
+     */
+    public boolean isStandalone(char c) {
+        final int cls = charClass[c];
+        if (cls == 0) {
+            return false;
+        }
+        for (int state = 0; state < stateCount(); state++) {
+            if (state != startState && transitions[state * classCount + cls] != DEAD) {
+                return false;
+            }
+        }
+        final int target = transitions[startState * classCount + cls];
+        if (accept[target] == REJECT) {
+            return false;
+        }
+        for (int other = 0; other < classCount; other++) {
+            if (transitions[target * classCount + other] != DEAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
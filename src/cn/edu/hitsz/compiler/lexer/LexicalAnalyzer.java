@@ -1,13 +1,16 @@
 package cn.edu.hitsz.compiler.lexer;
 
-import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.StreamSupport;
 
 /**
@@ -15,17 +18,54 @@ import java.util.stream.StreamSupport;
  * @author HITSZ, Klasnov
  * @see Token 词法单元的实现
  * @see TokenKind 词法单元类型的实现
+ * @see LexerGenerator 由词法规则文件生成 DFA 转移表
+ * @see SourceFile 按窗口提供源代码字节的输入源
+ * @see TokenBuffer 词法分析结果的紧凑存储
  */
 
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    private String codes;
-    private int codeLen;
-    private LinkedList<Token> tokens;
+    private SourceFile source;
+    private TokenBuffer tokens;
+    private final LexerTable table;
+    /** 并行分析时每个分块的最小字节数 */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    /** 是否使用 SWAR 快速扫描标识符, 数字与空白 */
+    private boolean fastScan = true;
+    /** 词素至少有这么多字节时才进入快速扫描, 短的标识符, 数字与单个空格逐个扫描更快 */
+    private static final int FAST_SCAN_MIN_LENGTH = 4;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
-        this.tokens = new LinkedList<>();
+        this.table = LexerGenerator.generate(FilePathConfig.TOKEN_SPEC_PATH);
+    }
+
+    /**
+     * 与 parent 共享转移表的分析器, 使用给定的符号表
+     */
+    private LexicalAnalyzer(LexicalAnalyzer parent, SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.table = parent.table;
+        this.fastScan = parent.fastScan;
+    }
+
+    /**
+     * 用于并行分析的子分析器, 与父分析器共享转移表和输入源, 但使用自己的符号表
+     */
+    private LexicalAnalyzer(LexicalAnalyzer parent) {
+        this(parent, new SymbolTable());
+        this.source = parent.source;
+        this.tokens = new TokenBuffer(source);
+    }
+
+    /**
+     * 创建一个与本分析器共享转移表的新分析器, 不必再次由词法规则文件生成 DFA. 新分析器尚未加载输入源
+     *
+     * @param symbolTable 新分析器使用的符号表
+     * @return 新的分析器
+     */
+    public LexicalAnalyzer withSymbolTable(SymbolTable symbolTable) {
+        return new LexicalAnalyzer(this, symbolTable);
     }
 
     /**
@@ -34,117 +74,268 @@ public class LexicalAnalyzer {
      * @param path 路径
      */
     public void loadFile(String path) throws IOException {
-        codes = Files.readString(Paths.get(path));
-        codeLen = codes.length();
+        source = SourceFile.read(path);
+        tokens = new TokenBuffer(source);
+    }
+
+    /**
+     * 以内存映射的方式加载文件, 文件内容不会进入堆内存, 分析时按窗口逐段扫描
+     *
+     * @param path 路径
+     */
+    public void loadFileMapped(String path) throws IOException {
+        loadFileMapped(path, SourceFile.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * 以内存映射的方式加载文件, 并指定每次映射的窗口大小
+     *
+     * @param path       路径
+     * @param windowSize 窗口大小, 必须大于源代码中最长的词法单元; 被跳过的空白等不受此限制
+     */
+    public void loadFileMapped(String path, int windowSize) throws IOException {
+        source = SourceFile.map(path, windowSize);
+        tokens = new TokenBuffer(source);
+    }
+
+    /**
+     * 加载一个已经打开的输入源
+     *
+     * @param source 输入源
+     */
+    public void loadSource(SourceFile source) {
+        this.source = source;
+        tokens = new TokenBuffer(source);
+    }
+
+    /**
+     * 判断能否在某个字符之后切分源代码, 使切分出的各段可以分别进行词法分析而结果不变
+     *
+     * @param c 字符
+     * @return 该字符是否总是单独构成一个词素
+     * @see LexerTable#isStandalone(char)
+     */
+    public boolean canSplitAfter(char c) {
+        return table.isStandalone(c);
+    }
+
+    /**
+     * 设置是否使用 SWAR 快速扫描. 开启时, 对于在一组字符上自环的状态 (标识符, 数字, 空白等), 每次判断 8 个字节以找到自环结束的位置,
+     * 剩余不足 8 个字节的部分再逐个扫描. 词素的前四个字节总是逐个扫描. 默认开启, 关闭后完全按字节逐个查表, 两者的结果相同.
+     * 两者的耗时可以用 {@link LexerBenchmark} 比较.
+     *
+     * @param fastScan 是否使用快速扫描
+     */
+    public void setFastScan(boolean fastScan) {
+        this.fastScan = fastScan;
     }
 
     /**
      * 执行词法分析, 准备好用于返回的 token 列表
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
+     * <br>
+     * 标识符在扫描时即被加入符号表, 其符号 id 随 token 一起存放在 TokenBuffer 中, 不需要再单独遍历一遍 token 列表.
      */
     public void run() {
-        // 扫描数据初始化
-        int bgnPt = 0, scnPt = 0;
-        char temp;
-        boolean isVain;
-        String str;
-        // 跳过代码开头的空格、回车
-        do {
-            isVain = false;
-            temp = codes.charAt(scnPt);
-            if (isVain(temp)) {
-                isVain = true;
-                scnPt++;
-                bgnPt++;
-            }
-        } while(isVain);
-        // 扫描代码
-        while (scnPt < codeLen) {
-            temp = codes.charAt(scnPt++);
-            // 标识符或关键字情况
-            if (isLte(temp)) {
-                do {
-                    temp = codes.charAt(scnPt++);
-                } while (isLte(temp) || isNum(temp));
-                str = codes.substring(bgnPt, --scnPt);
-                bgnPt = scnPt;
-                switch (str) {
-                    case "int", "return" -> tokens.add(Token.simple(str));
-                    default -> tokens.add(Token.normal("id", str));
-                }
-                continue;
-            }
-            // 数字常量
-            if (isNum(temp)) {
-                do {
-                    temp = codes.charAt(scnPt++);
-                } while (isNum(temp));
-                str = codes.substring(bgnPt, --scnPt);
-                bgnPt = scnPt;
-                tokens.add(Token.normal("IntConst", str));
-                continue;
-            }
-            // 格式控制符号
-            if (isVain(temp)) {
-                bgnPt++;
-                continue;
+        scan(0, source.size());
+        addEof();
+    }
+
+    /**
+     * 在公共 ForkJoin 线程池上并行执行词法分析
+     *
+     * @see #runParallel(ForkJoinPool)
+     */
+    public void runParallel() {
+        runParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 并行执行词法分析
+     * <br>
+     * 源语言的每条语句都以分号结尾, 且分号总是单独构成一个词素, 所以分号之后必然是一个词素的开头.
+     * 据此将源代码在分号处切成若干块, 各块在线程池上分别扫描, 最后按块的顺序拼接 token 列表, 结果与 {@link #run()} 完全一致.
+     * 每个块先把标识符登记在自己的符号表中, 拼接时再按块的顺序并入总的符号表, 所以符号 id 仍按标识符首次出现的顺序分配.
+     * 若源代码太小, 或词法规则中的分号不满足上述条件, 则退化为串行分析.
+     *
+     * @param pool 执行分析的线程池
+     */
+    public void runParallel(ForkJoinPool pool) {
+        final var size = source.size();
+        final var chunkCount = (int) Math.min(pool.getParallelism() * 4L, size / MIN_CHUNK_SIZE);
+        if (chunkCount <= 1 || !table.isStandalone(';')) {
+            run();
+            return;
+        }
+
+        // 在每个等分点之后的第一个分号处切分
+        final var bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        for (int idx = 1; idx < chunkCount; idx++) {
+            final var from = Math.max(size * idx / chunkCount, bounds.get(bounds.size() - 1));
+            final var bound = Math.min(source.indexOf(from, (byte) ';') + 1, size);
+            if (bound > bounds.get(bounds.size() - 1)) {
+                bounds.add(bound);
             }
-            // 分界符
-            if (!isLte(temp) && !isNum(temp) && !isVain(temp)) {
-                str = switch (temp) {
-                    case '=' -> "=";
-                    case ',' -> ",";
-                    case ';' -> "Semicolon";
-                    case '+' -> "+";
-                    case '-' -> "-";
-                    case '*' -> "*";
-                    case '/' -> "/";
-                    case '(' -> "(";
-                    case  ')' -> ")";
-                    default -> "";
-                };
-                bgnPt++;
-                if (str.compareTo("") != 0) {
-                    tokens.add(Token.simple(str));
-                }
+        }
+        if (bounds.get(bounds.size() - 1) < size) {
+            bounds.add(size);
+        }
+
+        final var chunks = new ArrayList<Callable<LexicalAnalyzer>>();
+        for (int idx = 0; idx + 1 < bounds.size(); idx++) {
+            final long from = bounds.get(idx), to = bounds.get(idx + 1);
+            chunks.add(() -> {
+                final var worker = new LexicalAnalyzer(this);
+                worker.scan(from, to);
+                return worker;
+            });
+        }
+        for (final var result : pool.invokeAll(chunks)) {
+            try {
+                final var worker = result.get();
+                tokens.addAll(worker.tokens, symbolTable.merge(worker.symbolTable));
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Parallel lexical analysis failed", e);
             }
         }
-        tokens.add(Token.eof());
+        addEof();
+    }
+
+    private void addEof() {
+        tokens.add(TokenKind.eof().getCode(), source.size(), 0, -1);
     }
 
     /**
-     * 判断一个输入的字符是否为空格或制表符
+     * 逐个窗口扫描源代码中 [from, to) 的部分. 若某个词素跨越了窗口的末尾, 则下一个窗口从该词素的开头重新映射;
+     * 若该词素本来就从窗口的开头开始, 重新映射也放不下, 则交给 {@link #scanAcross(long, long)} 跨窗口扫描.
      *
-     * @param c 需要判断的字符
+     * @param from 起始偏移
+     * @param to   结束偏移
      */
-    private boolean isVain(char c) {
-        return ((c == '\t') || (c == '\n') || (c == '\r'));
+    private void scan(long from, long to) {
+        long base = from;
+        while (base < to) {
+            final var window = source.window(base);
+            final var limit = (int) Math.min(window.limit(), to - base);
+            final var last = base + limit == to;
+            final var consumed = scanWindow(window, base, limit, last);
+            base = consumed == 0 && !last ? scanAcross(base, to) : base + consumed;
+        }
     }
 
     /**
-     * 判断一个输入的字符是否为字母
+     * 不受窗口限制地扫描从 start 开始的一个词素, 转移的规则与 scanWindow 相同, DFA 的状态在窗口之间延续.
+     * 被跳过的词素 (例如很长的空白) 可以任意长; 需要产生词法单元的词素则必须能放进从其开头映射的一个窗口.
      *
-     * @param c 需要判断的字符
+     * @param start 词素的起始偏移
+     * @param to    结束偏移
+     * @return 该词素之后的偏移
      */
-    private boolean isLte(char c) {
-        return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z'));
+    private long scanAcross(long start, long to) {
+        final var charClass = table.charClass();
+        final var transitions = table.transitions();
+        final var accept = table.accept();
+        final int classCount = table.classCount();
+        int state = table.startState(), accState = LexerTable.DEAD;
+        long accEnd = start;
+        long base = start;
+        scanning:
+        while (base < to) {
+            final var window = source.window(base);
+            final var limit = (int) Math.min(window.limit(), to - base);
+            for (int scnPt = 0; scnPt < limit; scnPt++) {
+                state = transitions[state * classCount + charClass[window.get(scnPt) & 0xff]];
+                if (state == LexerTable.DEAD) {
+                    break scanning;
+                }
+                if (accept[state] != LexerTable.REJECT) {
+                    accState = state;
+                    accEnd = base + scnPt + 1;
+                }
+            }
+            base += limit;
+        }
+        // 无法识别的字符
+        if (accState == LexerTable.DEAD) {
+            return start + 1;
+        }
+        final int code = accept[accState];
+        if (code != LexerTable.SKIP) {
+            final var window = source.window(start);
+            if (accEnd - start > window.limit()) {
+                throw new RuntimeException("Lexeme at %d is longer than the window".formatted(start));
+            }
+            final int length = (int) (accEnd - start);
+            tokens.add(code, start, table.withText()[code] ? length : 0,
+                code == TokenKind.fromString("id").getCode() ? symbolTable.intern(window, 0, length) : -1);
+        }
+        return accEnd;
     }
 
     /**
-     * 判断一个输入的字符是否为数字
+     * 按最长匹配原则在 DFA 转移表上扫描一个窗口: 一直转移到死状态为止, 并以最后经过的接受状态作为词素的结尾.
+     * 不属于任何规则的字符会被直接跳过.
      *
-     * @param c 需要判断的字符
+     * @param window 窗口
+     * @param base   窗口在源代码中的起始偏移
+     * @param limit  窗口内需要扫描的字节数
+     * @param last   是否为最后一个窗口; 若不是, 则扫描到窗口末尾仍未结束的词素留给下一个窗口
+     * @return 已完整处理的字节数
      */
-    private boolean isNum(char c) {
-        return ((c >= '0') && (c <= '9'));
+    private int scanWindow(ByteBuffer window, long base, int limit, boolean last) {
+        final var charClass = table.charClass();
+        final var transitions = table.transitions();
+        final var accept = table.accept();
+        final int classCount = table.classCount();
+        final var runRanges = table.runRanges();
+        final int idCode = TokenKind.fromString("id").getCode();
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        int bgnPt = 0;
+        while (bgnPt < limit) {
+            int state = table.startState(), scnPt = bgnPt;
+            int accState = LexerTable.DEAD, accEnd = bgnPt;
+            // 扫描当前词素
+            while (scnPt < limit) {
+                state = transitions[state * classCount + charClass[window.get(scnPt) & 0xff]];
+                if (state == LexerTable.DEAD) {
+                    break;
+                }
+                scnPt++;
+                if (fastScan && runRanges[state] != 0 && scnPt - bgnPt >= FAST_SCAN_MIN_LENGTH) {
+                    scnPt = table.skipRun(window, scnPt, limit, state);
+                }
+                if (accept[state] != LexerTable.REJECT) {
+                    accState = state;
+                    accEnd = scnPt;
+                }
+            }
+            // 词素可能延续到下一个窗口
+            if (scnPt == limit && !last) {
+                return bgnPt;
+            }
+            // 无法识别的字符
+            if (accState == LexerTable.DEAD) {
+                bgnPt++;
+                continue;
+            }
+            final int code = accept[accState];
+            if (code != LexerTable.SKIP) {
+                final int length = accEnd - bgnPt;
+                tokens.add(code, base + bgnPt, table.withText()[code] ? length : 0,
+                    code == idCode ? symbolTable.intern(window, bgnPt, length) : -1);
+            }
+            bgnPt = accEnd;
+        }
+        return limit;
     }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
      *
-     * @return Token 列表
+     * @return 词法单元缓冲区
      */
-    public LinkedList<Token> getTokens() {
+    public TokenBuffer getTokens() {
         return tokens;
     }
 
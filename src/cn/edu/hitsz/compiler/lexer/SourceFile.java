@@ -0,0 +1,160 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 词法分析的输入源, 以 ASCII 字节的形式按窗口提供源代码内容
+ * <br>
+ * 源代码既可以整个读入堆内存 (此时只有一个覆盖整个文件的窗口), 也可以通过 {@link FileChannel#map} 按固定大小的窗口映射到堆外内存.
+ * 后者不会把文件内容放入堆中, 也不受单个数组/字符串约 2G 的长度限制, 适合处理由工具生成的超大源文件.
+ * 映射时文件只打开一次, 各窗口都由同一个 FileChannel 映射; 该通道在 {@link #close()} 之前一直打开, 以便随时按需读取词素文本.
+ *
+ * @author Klasnov
+ */
+public class SourceFile implements Closeable {
+    /** 默认的映射窗口大小 */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    private final Path path;
+    private final long size;
+    private final int windowSize;
+    private final ByteBuffer heap;
+    /** 映射窗口所用的通道, 整个文件读入堆内存时为 null */
+    private final FileChannel channel;
+
+    /** 最近一次映射的窗口, 用于按需读取词素文本. 窗口与其起始偏移放在一起整体替换, 以便多个线程同时读取文本 */
+    private volatile CachedWindow cached;
+
+    private record CachedWindow(long base, ByteBuffer window) {
+    }
+
+    private SourceFile(Path path, long size, int windowSize, ByteBuffer heap, FileChannel channel) {
+        this.path = path;
+        this.size = size;
+        this.windowSize = windowSize;
+        this.heap = heap;
+        this.channel = channel;
+    }
+
+    /**
+     * 将整个文件读入堆内存
+     *
+     * @param path 文件路径
+     * @return 输入源
+     */
+    public static SourceFile read(String path) throws IOException {
+        final var bytes = Files.readAllBytes(Paths.get(path));
+        return new SourceFile(Paths.get(path), bytes.length, bytes.length, ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * 以一段已在内存中的字节作为源代码
+     *
+     * @param bytes 源代码的字节
+     * @return 输入源
+     */
+    public static SourceFile wrap(byte[] bytes) {
+        return new SourceFile(null, bytes.length, bytes.length, ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * 以内存映射的方式打开文件
+     *
+     * @param path       文件路径
+     * @param windowSize 每次映射的窗口大小, 必须大于源代码中最长的词法单元; 被跳过的空白等不受此限制
+     * @return 输入源
+     */
+    public static SourceFile map(String path, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new RuntimeException("Window size must be positive");
+        }
+        final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        return new SourceFile(Paths.get(path), channel.size(), windowSize, null, channel);
+    }
+
+    /**
+     * @return 源代码的字节数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 获得从 {@code from} 开始的一个窗口. 窗口的下标 0 对应文件中的 {@code from}, 其 limit 为窗口内的有效字节数.
+     * 该方法可以被多个线程同时调用.
+     *
+     * @param from 窗口在文件中的起始偏移
+     * @return 窗口
+     */
+    public ByteBuffer window(long from) {
+        if (heap != null) {
+            return heap.slice((int) from, (int) (size - from));
+        }
+        final var length = Math.min(windowSize, size - from);
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 从 {@code from} 开始查找第一个值为 {@code target} 的字节
+     *
+     * @param from   起始偏移
+     * @param target 待查找的字节
+     * @return 该字节的偏移, 找不到时返回文件大小
+     */
+    public long indexOf(long from, byte target) {
+        long base = from;
+        while (base < size) {
+            final var window = window(base);
+            for (int idx = 0; idx < window.limit(); idx++) {
+                if (window.get(idx) == target) {
+                    return base + idx;
+                }
+            }
+            base += window.limit();
+        }
+        return size;
+    }
+
+    /**
+     * 读取一段源代码文本, 该方法可以被多个线程同时调用
+     *
+     * @param start  起始偏移
+     * @param length 字节数
+     * @return 对应的文本
+     */
+    public String text(long start, int length) {
+        if (heap != null) {
+            return new String(heap.array(), (int) start, length, StandardCharsets.US_ASCII);
+        }
+        var current = cached;
+        if (current == null || start < current.base() || start + length > current.base() + current.window().limit()) {
+            current = new CachedWindow(start, window(start));
+            cached = current;
+        }
+        final var bytes = new byte[length];
+        current.window().get((int) (start - current.base()), bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 关闭映射窗口所用的通道. 已经取得的窗口仍然可用, 但此后不能再取得新的窗口或读取尚未缓存的词素文本
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 源代码位置表, 用于把源代码中的字节偏移换算为行号与列号
+ * <br>
+ * 表中只记录每一行的起始偏移, 词法单元等只需保存自己的偏移, 需要时再通过二分查找得到行列号.
+ * 该表仅在有人需要位置信息时才通过 {@link #of(SourceFile)} 扫描一遍源代码建立, 不需要时没有任何开销.
+ *
+ * @author Klasnov
+ */
+public class SourcePositions {
+    private final long[] lineStarts;
+    private final int lineCount;
+
+    private SourcePositions(long[] lineStarts, int lineCount) {
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * 扫描源代码中的换行符, 建立位置表
+     *
+     * @param source 源代码
+     * @return 位置表
+     */
+    public static SourcePositions of(SourceFile source) {
+        var lineStarts = new long[64];
+        int lineCount = 1;
+        long base = 0;
+        while (base < source.size()) {
+            final var window = source.window(base);
+            for (int idx = 0; idx < window.limit(); idx++) {
+                if (window.get(idx) == '\n') {
+                    if (lineCount == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                    }
+                    lineStarts[lineCount++] = base + idx + 1;
+                }
+            }
+            base += window.limit();
+        }
+        return new SourcePositions(lineStarts, lineCount);
+    }
+
+    /**
+     * @param offset 字节偏移
+     * @return 该偏移所在的行号, 从 1 开始
+     */
+    public int line(long offset) {
+        final var found = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    /**
+     * @param offset 字节偏移
+     * @return 该偏移所在的列号, 从 1 开始
+     */
+    public int column(long offset) {
+        return (int) (offset - lineStarts[line(offset) - 1]) + 1;
+    }
+
+    /**
+     * @param offset 字节偏移
+     * @return 形如 {@code 行号:列号} 的位置描述
+     */
+    public String describe(long offset) {
+        return "%d:%d".formatted(line(offset), column(offset));
+    }
+}
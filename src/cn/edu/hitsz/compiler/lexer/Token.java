@@ -13,16 +13,28 @@ package cn.edu.hitsz.compiler.lexer;
 
 public class Token {
     private final TokenKind kind;
-    private final String text;
+    private String text;
+    /** 文本尚未读取时, 该 token 在 TokenBuffer 中的位置 */
+    private final TokenBuffer buffer;
+    private final int index;
 
     private Token(TokenKind kind, String text) {
         this.kind = kind;
         this.text = text;
+        this.buffer = null;
+        this.index = -1;
+    }
+
+    private Token(TokenBuffer buffer, int index) {
+        this.kind = buffer.kind(index);
+        this.text = null;
+        this.buffer = buffer;
+        this.index = index;
     }
 
     @Override
     public String toString() {
-        return "(%s,%s)".formatted(kind, text);
+        return "(%s,%s)".formatted(kind, getText());
     }
 
     /**
@@ -65,6 +77,15 @@ public class Token {
         return new Token(kind, text);
     }
 
+    /**
+     * @param buffer 词法单元缓冲区
+     * @param index  词法单元在缓冲区中的位置
+     * @return 一个在首次调用 getText 时才从源代码中读取文本的 token
+     */
+    static Token lazy(TokenBuffer buffer, int index) {
+        return new Token(buffer, index);
+    }
+
     /**
      * @return 该 token 的类型的文本表示
      */
@@ -79,10 +100,27 @@ public class Token {
         return kind;
     }
 
+    /**
+     * @return 该 token 在符号表中的 id, 非标识符或不是由词法分析器产生的 token 为 -1
+     */
+    public int getSymbolId() {
+        return buffer == null ? -1 : buffer.symbol(index);
+    }
+
+    /**
+     * @return 该 token 在源代码中的起始偏移, 不是由词法分析器产生的 token 或被共享的简单 token 为 -1
+     */
+    public long getOffset() {
+        return buffer == null ? -1 : buffer.start(index);
+    }
+
     /**
      * @return 该 token 的文本, 有可能为空字符串 (但恒不为 null)
      */
     public String getText() {
+        if (text == null) {
+            text = buffer.text(index);
+        }
         return text;
     }
 }
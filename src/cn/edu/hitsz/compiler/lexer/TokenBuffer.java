@@ -0,0 +1,205 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 词法分析的结果, 以 "数组的结构体" 形式紧凑地存储所有词法单元
+ * <br>
+ * 每个词法单元只占用 12 字节, 分别是两个数组中的各一个元素. int 数组的低 8 位为类型的码点 + 1, 高 24 位为符号 id + 1;
+ * long 数组的高 40 位为在源代码中的起始偏移, 低 24 位为文本长度. 不带文本的词法单元 (标点/关键字) 的文本长度为 0,
+ * 只有标识符才有符号 id, 其余词法单元的符号 id 为 -1. 起始偏移可以超过 2G, 因为内存映射的源文件可以很大.
+ * 词法单元的文本不会在词法分析时生成, 而是在有人通过 {@link #text(int)} 或 {@link Token#getText()} 索取时才从源代码中读取.
+ * <br>
+ * 为了兼容以 Token 为单位的代码, 该类也可以作为 {@code Iterable<Token>} 使用, 此时每个 Token 都是按需构造的.
+ *
+ * @author Klasnov
+ * @see LexicalAnalyzer
+ */
+public class TokenBuffer implements Iterable<Token> {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int KIND_BITS = 8;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    private static final long MAX_START = (1L << (Long.SIZE - LENGTH_BITS)) - 1;
+    private static final int MAX_SYMBOL = (1 << (Integer.SIZE - KIND_BITS)) - 2;
+
+    private final SourceFile source;
+    /** 类型的码点 + 1 与符号 id + 1 */
+    private int[] kindSymbols = new int[INITIAL_CAPACITY];
+    /** 起始偏移与文本长度 */
+    private long[] spans = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * 不带文本的 token 可以在所有位置共享, 按码点 + 1 缓存. 构造时就为每种类型建好且之后不再修改,
+     * 所以异步通知时多个观察者线程可以同时调用 {@link #get(int)}
+     */
+    private final Token[] simpleTokens;
+    /** 行起始偏移表, 首次需要行列号时才建立 */
+    private SourcePositions positions;
+
+    /**
+     * @param source 词法单元所在的源代码
+     */
+    public TokenBuffer(SourceFile source) {
+        this.source = source;
+        final var allowed = TokenKind.allAllowedTokenKinds().values();
+        this.simpleTokens = new Token[allowed.stream().mapToInt(TokenKind::getCode).max().orElse(-1) + 2];
+        if (simpleTokens.length > KIND_MASK + 1) {
+            throw new RuntimeException("Too many token kinds for TokenBuffer: " + simpleTokens.length);
+        }
+        for (final var kind : allowed) {
+            simpleTokens[kind.getCode() + 1] = Token.simple(kind);
+        }
+    }
+
+    /**
+     * 在末尾追加一个词法单元
+     *
+     * @param code   类型的码点
+     * @param start  在源代码中的起始偏移
+     * @param length 文本长度, 不带文本的词法单元为 0
+     * @param symbol 符号 id, 非标识符为 -1
+     */
+    void add(int code, long start, int length, int symbol) {
+        if (size == kindSymbols.length) {
+            grow(size + 1);
+        }
+        if (start > MAX_START || length > LENGTH_MASK || symbol > MAX_SYMBOL) {
+            throw new RuntimeException("Token at offset %d is out of the range of TokenBuffer".formatted(start));
+        }
+        kindSymbols[size] = (symbol + 1) << KIND_BITS | (code + 1);
+        spans[size] = start << LENGTH_BITS | length;
+        size++;
+    }
+
+    /**
+     * 在末尾追加另一个缓冲区中的所有词法单元, 两者须来自同一份源代码
+     *
+     * @param other         另一个缓冲区
+     * @param symbolMapping 另一个缓冲区中的符号 id 到本缓冲区中符号 id 的映射
+     */
+    void addAll(TokenBuffer other, int[] symbolMapping) {
+        if (size + other.size > kindSymbols.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.spans, 0, spans, size, other.size);
+        for (int idx = 0; idx < other.size; idx++) {
+            final var packed = other.kindSymbols[idx];
+            final var symbol = (packed >>> KIND_BITS) - 1;
+            final var mapped = symbol < 0 ? symbol : symbolMapping[symbol];
+            kindSymbols[size + idx] = (mapped + 1) << KIND_BITS | (packed & KIND_MASK);
+        }
+        size += other.size;
+    }
+
+    /**
+     * 释放多余的容量, 用于需要长期保存大量小缓冲区的场合
+     */
+    public void trimToSize() {
+        kindSymbols = Arrays.copyOf(kindSymbols, size);
+        spans = Arrays.copyOf(spans, size);
+    }
+
+    private void grow(int minCapacity) {
+        final var capacity = Math.max(minCapacity, kindSymbols.length * 2);
+        kindSymbols = Arrays.copyOf(kindSymbols, capacity);
+        spans = Arrays.copyOf(spans, capacity);
+    }
+
+    /**
+     * @return 词法单元的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index 词法单元的位置
+     * @return 该词法单元类型的码点
+     */
+    public int kindCode(int index) {
+        return (kindSymbols[index] & KIND_MASK) - 1;
+    }
+
+    /**
+     * @param index 词法单元的位置
+     * @return 该词法单元的类型
+     */
+    public TokenKind kind(int index) {
+        return TokenKind.fromCode(kindCode(index));
+    }
+
+    /**
+     * @param index 词法单元的位置
+     * @return 该词法单元在源代码中的起始偏移
+     */
+    public long start(int index) {
+        return spans[index] >>> LENGTH_BITS;
+    }
+
+    /**
+     * @param index 词法单元的位置
+     * @return 该词法单元在符号表中的 id, 非标识符为 -1
+     */
+    public int symbol(int index) {
+        return (kindSymbols[index] >>> KIND_BITS) - 1;
+    }
+
+    /**
+     * @param index 词法单元的位置
+     * @return 该词法单元的文本, 有可能为空字符串 (但恒不为 null)
+     */
+    public String text(int index) {
+        final var length = (int) (spans[index] & LENGTH_MASK);
+        return length == 0 ? "" : source.text(spans[index] >>> LENGTH_BITS, length);
+    }
+
+    /**
+     * 获得源代码的位置表, 以便把 {@link #start(int)} 换算为行列号. 位置表在首次调用时才扫描源代码建立.
+     *
+     * @return 位置表
+     */
+    public SourcePositions positions() {
+        if (positions == null) {
+            positions = SourcePositions.of(source);
+        }
+        return positions;
+    }
+
+    /**
+     * 获得某个位置的 Token 对象. 不带文本的 Token 会被复用, 带文本的 Token 则在首次读取文本时才访问源代码
+     *
+     * @param index 词法单元的位置
+     * @return Token 对象
+     */
+    public Token get(int index) {
+        if ((spans[index] & LENGTH_MASK) != 0) {
+            return Token.lazy(this, index);
+        }
+        return simpleTokens[kindSymbols[index] & KIND_MASK];
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+}
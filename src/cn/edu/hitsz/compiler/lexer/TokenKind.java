@@ -34,6 +34,8 @@ public class TokenKind extends Term {
     /** 允许用作 TokenKind 的 id 的字符串集合 */
     private static final Map<String, TokenKind> ALLOWED = new HashMap<>();
     private static final TokenKind EOF = new TokenKind("$", -1);
+    /** 码点 + 1 到 TokenKind 的映射, 下标 0 为 EOF */
+    private static TokenKind[] byCode = new TokenKind[0];
 
     /**
      * 从码点文件中读取允许的标识符集合
@@ -50,6 +52,10 @@ public class TokenKind extends Term {
             ALLOWED.put(id, new TokenKind(id, code));
         }
         ALLOWED.put("$", EOF);
+
+        final var maxCode = ALLOWED.values().stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        byCode = new TokenKind[maxCode + 2];
+        ALLOWED.values().forEach(kind -> byCode[kind.getCode() + 1] = kind);
     }
 
     /**
@@ -82,6 +88,18 @@ public class TokenKind extends Term {
         return ALLOWED.get(id);
     }
 
+    /**
+     * @param code 码点
+     * @return 具有该码点的 TokenKind
+     * @throws RuntimeException 码点文件尚未被读取, 或该码点不存在
+     */
+    public static TokenKind fromCode(int code) {
+        if (code + 1 < 0 || code + 1 >= byCode.length || byCode[code + 1] == null) {
+            throw new RuntimeException("Illegal code: " + code);
+        }
+        return byCode[code + 1];
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
@@ -54,4 +54,44 @@ public interface ActionObserver {
      * @param table 符号表
      */
     void setSymbolTable(SymbolTable table);
+
+    /**
+     * 当驱动程序开启了位置跟踪时, 会在每次调用 whenShift 与 whenReduce 之前调用此函数, 给出即将移进的词法单元或待规约的产生式
+     * 在源代码中的起始偏移. 未开启位置跟踪时不会调用, 不关心源代码位置的观察者无需实现.
+     *
+     * @param offset 起始偏移, 可以通过 {@link cn.edu.hitsz.compiler.lexer.TokenBuffer#positions()} 换算为行列号
+     * @see SyntaxAnalyzer#setTrackPositions(boolean)
+     */
+    default void atPosition(long offset) {
+    }
+
+    /**
+     * 驱动程序在开始分析前调用此函数, 以决定 Shift 动作是否需要通知该观察者. 不关心移进的观察者可以返回 false,
+     * 此时驱动程序不会为其构造 Token 对象.
+     *
+     * @return 是否需要在 Shift 时调用 whenShift
+     */
+    default boolean observesShift() {
+        return true;
+    }
+
+    /**
+     * 驱动程序在开始分析前对每条产生式调用此函数, 以构造按产生式编号分派的观察者表. 只关心部分产生式的观察者可以对其余产生式返回 false,
+     * 从而不必在 whenReduce 中再根据产生式进行分支.
+     *
+     * @param production 产生式
+     * @return 是否需要在规约该产生式时调用 whenReduce
+     */
+    default boolean observesReduce(Production production) {
+        return true;
+    }
+
+    /**
+     * 驱动程序在开始分析前调用此函数, 以决定 Accept 动作是否需要通知该观察者.
+     *
+     * @return 是否需要在 Accept 时调用 whenAccept
+     */
+    default boolean observesAccept() {
+        return true;
+    }
 }
@@ -0,0 +1,119 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+import cn.edu.hitsz.compiler.parser.table.CompressedTable;
+
+import java.util.Arrays;
+
+/**
+ * 通过压缩后的分析表查表的 LR 驱动程序
+ * <br>
+ * 移进与规约的规则同 SyntaxAnalyzer, action 与 goto 都经由 {@link CompressedTable#action(int, int)} 与
+ * {@link CompressedTable#gotoState(int, int)} 查得, 列表的推迟与补发所需的信息也取自压缩表, 分析时不需要稠密的 CompiledTable. 每个动作以与
+ * {@link ParseEventRing} 相同的三个 int 的形式交给事件的消费者. 不跟踪源代码位置, 也不消除单产生式.
+ * <br>
+ * 压缩表开启默认规约时, 遇到错误的词法单元前可能先做若干次默认规约, 但在移进该词法单元之前一定会报告同一位置的语法错误.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setCompressedTable(boolean, boolean)
+ */
+class CompressedParser {
+    private final CompressedTable compressed;
+    private final TokenBuffer tokens;
+    private final ParseEventRing.Sink sink;
+
+    /** 状态编号, 非终结符编号 (终结符为 -1) 与列表上尚未补发的规约数 */
+    private int[] states = new int[64];
+    private int[] symbols = new int[64];
+    private int[] pending = new int[64];
+    private int top = 0;
+
+    CompressedParser(CompressedTable compressed, TokenBuffer tokens, ParseEventRing.Sink sink) {
+        this.compressed = compressed;
+        this.tokens = tokens;
+        this.sink = sink;
+    }
+
+    /**
+     * 分析整个词法单元流, 并按顺序把所有动作交给事件的消费者
+     *
+     * @throws RuntimeException 词法单元流不是文法的句子
+     */
+    void parse() {
+        final var eofCode = TokenKind.eof().getCode();
+        final var productionLengths = compressed.productionLengths();
+        final var productionHeads = compressed.productionHeads();
+        final var listRoles = compressed.listRoles();
+        top = 0;
+        states[0] = compressed.initState();
+        symbols[0] = -1;
+        pending[0] = 0;
+        int pos = 0;
+        while (pos < tokens.size()) {
+            final var code = tokens.kindCode(pos);
+            final var action = compressed.action(states[top], code);
+            final var kind = CompiledTable.kindOf(action);
+            if (pending[top] > 0 && (kind != CompiledTable.SHIFT || !compressed.continuesList(symbols[top], code))) {
+                flushList();
+            }
+            switch (kind) {
+                case CompiledTable.SHIFT -> {
+                    push(CompiledTable.operandOf(action), -1, 0);
+                    sink.accept(CompiledTable.SHIFT, states[top], pos++);
+                }
+                case CompiledTable.REDUCE -> {
+                    final var production = CompiledTable.operandOf(action);
+                    final var length = productionLengths[production];
+                    final var count = switch (listRoles[production]) {
+                        case CompiledTable.LIST_BASE -> 1;
+                        case CompiledTable.LIST_APPEND -> pending[top - length + 1] + 1;
+                        default -> 0;
+                    };
+                    top -= length;
+                    push(compressed.gotoState(states[top], production), productionHeads[production], count);
+                    if (count == 0) {
+                        sink.accept(CompiledTable.REDUCE, states[top], production);
+                    }
+                }
+                case CompiledTable.ACCEPT -> {
+                    if (code == eofCode) {
+                        sink.accept(CompiledTable.ACCEPT, states[top], 0);
+                        return;
+                    }
+                    throw SyntaxAnalyzer.syntaxError(tokens, pos);
+                }
+                default -> throw SyntaxAnalyzer.syntaxError(tokens, pos);
+            }
+        }
+        throw SyntaxAnalyzer.syntaxError(tokens, tokens.size() - 1);
+    }
+
+    /**
+     * 补发栈顶列表推迟的规约, 顺序同 SyntaxAnalyzer
+     */
+    private void flushList() {
+        final var list = symbols[top];
+        sink.accept(CompiledTable.REDUCE, states[top], compressed.listBases()[list]);
+        for (int count = pending[top] - 1; count > 0; count--) {
+            sink.accept(CompiledTable.REDUCE, states[top], compressed.listRecursions()[list]);
+        }
+        pending[top] = 0;
+    }
+
+    private void push(int state, int symbol, int count) {
+        if (++top == states.length) {
+            grow();
+        }
+        states[top] = state;
+        symbols[top] = symbol;
+        pending[top] = count;
+    }
+
+    private void grow() {
+        states = Arrays.copyOf(states, states.length * 2);
+        symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        pending = Arrays.copyOf(pending, pending.length * 2);
+    }
+}
@@ -0,0 +1,310 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 将 LR 分析表编译为实现 {@link ParserEngine} 的 Java 类
+ * <br>
+ * 生成的类中, 驱动程序是循环中对当前状态的 switch, 每个状态内再对向前看词法单元的码点 switch, 移进与规约的代码按状态与产生式直接展开,
+ * 产生式体的长度, 规约后 goto 到的状态等都是常量, 不再查表. 每个非终结符的 goto 表展开为一个独立的方法.
+ * 生成的类应当预先编译并随编译器一起发布, 这样 JIT 看到的是固定的, 单态的代码.
+ * <br>
+ * 分析表可以来自 TableGenerator 或 TableLoader. 若分析表中有改写为左递归的列表, 生成的代码会按与 SyntaxAnalyzer 相同的方式推迟并补发列表的规约.
+ *
+ * @author Klasnov
+ * @see ParserEngine
+ */
+public class EngineGenerator {
+    /** 默认生成的引擎, 对应 Main 使用的分析表 */
+    public static final String DEFAULT_PACKAGE = "cn.edu.hitsz.compiler.parser.generated";
+    public static final String DEFAULT_CLASS = "GeneratedEngine";
+    public static final String DEFAULT_PATH = "src/cn/edu/hitsz/compiler/parser/generated/GeneratedEngine.java";
+
+    private final CompiledTable table;
+    private final List<String> nonTerminalNames;
+    private final StringBuilder out = new StringBuilder();
+
+    private EngineGenerator(LRTable table) {
+        this.table = CompiledTable.compile(table);
+        this.nonTerminalNames = table.nonTerminals().stream().map(NonTerminal::getTermName).toList();
+    }
+
+    /**
+     * 重新生成 Main 所用分析表对应的引擎, 文法改变后需要重新运行
+     */
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var tableGenerator = new TableGenerator(true, TableGenerator.Method.LALR1);
+        tableGenerator.run();
+        FileUtils.writeFile(DEFAULT_PATH, generate(tableGenerator.getTable(), DEFAULT_PACKAGE, DEFAULT_CLASS));
+    }
+
+    /**
+     * 生成引擎的源代码
+     *
+     * @param table       LR 分析表
+     * @param packageName 生成的类所在的包
+     * @param className   生成的类名
+     * @return Java 源代码
+     */
+    public static String generate(LRTable table, String packageName, String className) {
+        final var generator = new EngineGenerator(table);
+        generator.emitClass(packageName, className);
+        return generator.out.toString();
+    }
+
+    private void emitClass(String packageName, String className) {
+        final var hasLists = Arrays.stream(table.listBases()).anyMatch(base -> base != 0);
+        line(0, "package %s;", packageName);
+        line(0, "");
+        line(0, "import cn.edu.hitsz.compiler.lexer.TokenBuffer;");
+        line(0, "import cn.edu.hitsz.compiler.parser.ParseEventRing;");
+        line(0, "import cn.edu.hitsz.compiler.parser.ParserEngine;");
+        line(0, "");
+        line(0, "import java.util.Arrays;");
+        line(0, "");
+        line(0, "/**");
+        line(0, " * 由 EngineGenerator 根据 LR 分析表生成的驱动程序, 请勿手工修改");
+        line(0, " *");
+        line(0, " * @see cn.edu.hitsz.compiler.parser.EngineGenerator");
+        line(0, " */");
+        line(0, "public final class %s implements ParserEngine {", className);
+        line(1, "private static final int SHIFT = %d;", CompiledTable.SHIFT);
+        line(1, "private static final int REDUCE = %d;", CompiledTable.REDUCE);
+        line(1, "private static final int ACCEPT = %d;", CompiledTable.ACCEPT);
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public long fingerprint() {");
+        line(2, "return 0x%xL;", table.fingerprint());
+        line(1, "}");
+        line(0, "");
+        emitParse(hasLists);
+        for (int nonTerminal = 0; nonTerminal < table.nonTerminalCount(); nonTerminal++) {
+            emitGoto(nonTerminal);
+        }
+        if (hasLists) {
+            emitLists();
+        }
+        line(0, "");
+        line(1, "private static int[] grow(int[] stack) {");
+        line(2, "return Arrays.copyOf(stack, stack.length * 2);");
+        line(1, "}");
+        line(0, "");
+        line(1, "private static RuntimeException error(TokenBuffer tokens, int pos) {");
+        line(2, "return new RuntimeException(\"Syntax analysis failed at %s! \".formatted(");
+        line(4, "tokens.positions().describe(tokens.start(pos))) +");
+        line(4, "\"It is not a sentence pattern corresponding to grammar.\");");
+        line(1, "}");
+        line(0, "}");
+    }
+
+    private void emitParse(boolean hasLists) {
+        final var width = table.terminalWidth();
+        final var eofCode = TokenKind.eof().getCode();
+        line(1, "@Override");
+        line(1, "public void parse(TokenBuffer tokens, ParseEventRing.Sink sink) {");
+        line(2, "int[] states = new int[64];");
+        if (hasLists) {
+            line(2, "int[] pending = new int[64];");
+        }
+        line(2, "int top = 0;");
+        line(2, "int state = %d;", table.initState());
+        line(2, "int pos = 0;");
+        line(2, "states[0] = state;");
+        line(2, "while (true) {");
+        line(3, "final int code = tokens.kindCode(pos);");
+        if (hasLists) {
+            line(3, "if (pending[top] > 0 && !continuesList(state, code)) {");
+            line(4, "flushList(state, pending[top], sink);");
+            line(4, "pending[top] = 0;");
+            line(3, "}");
+        }
+        line(3, "switch (state) {");
+        for (int state = 0; state < table.statuses().length; state++) {
+            if (table.statuses()[state] == null) {
+                continue;
+            }
+            line(4, "case %d -> {", state);
+            line(5, "switch (code) {");
+            for (int column = 0; column < width; column++) {
+                final var action = table.actions()[state * width + column];
+                final var code = column - 1;
+                switch (CompiledTable.kindOf(action)) {
+                    case CompiledTable.SHIFT -> emitShift(code, CompiledTable.operandOf(action), hasLists);
+                    case CompiledTable.REDUCE -> emitReduce(code, CompiledTable.operandOf(action), hasLists);
+                    case CompiledTable.ACCEPT -> {
+                        if (code == eofCode) {
+                            line(6, "case %d -> {", code);
+                            line(7, "sink.accept(ACCEPT, state, 0);");
+                            line(7, "return;");
+                            line(6, "}");
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            line(6, "default -> throw error(tokens, pos);");
+            line(5, "}");
+            line(4, "}");
+        }
+        line(4, "default -> throw new IllegalStateException(\"Unknown state: \" + state);");
+        line(3, "}");
+        line(2, "}");
+        line(1, "}");
+    }
+
+    private void emitShift(int code, int target, boolean hasLists) {
+        line(6, "case %d -> {", code);
+        line(7, "if (++top == states.length) {");
+        line(8, "states = grow(states);");
+        if (hasLists) {
+            line(8, "pending = grow(pending);");
+        }
+        line(7, "}");
+        line(7, "states[top] = state = %d;", target);
+        if (hasLists) {
+            line(7, "pending[top] = 0;");
+        }
+        line(7, "sink.accept(SHIFT, state, pos++);");
+        line(6, "}");
+    }
+
+    private void emitReduce(int code, int production, boolean hasLists) {
+        final var length = table.productionLengths()[production];
+        final var role = table.listRoles()[production];
+        line(6, "case %d -> {", code);
+        line(7, "// %s", table.productions()[production]);
+        if (role == CompiledTable.LIST_APPEND) {
+            line(7, "final int count = pending[top - %d] + 1;", length - 1);
+        }
+        if (length > 0) {
+            line(7, "top -= %d;", length);
+        }
+        line(7, "state = %s(states[top]);", gotoName(table.productionHeads()[production]));
+        if (length == 0) {
+            line(7, "if (top + 1 == states.length) {");
+            line(8, "states = grow(states);");
+            if (hasLists) {
+                line(8, "pending = grow(pending);");
+            }
+            line(7, "}");
+        }
+        line(7, "states[++top] = state;");
+        switch (role) {
+            case CompiledTable.LIST_BASE -> line(7, "pending[top] = 1;");
+            case CompiledTable.LIST_APPEND -> line(7, "pending[top] = count;");
+            default -> {
+                if (hasLists) {
+                    line(7, "pending[top] = 0;");
+                }
+                line(7, "sink.accept(REDUCE, state, %d);", production);
+            }
+        }
+        line(6, "}");
+    }
+
+    private void emitGoto(int nonTerminal) {
+        final var statusCount = table.statuses().length;
+        final var error = "throw new IllegalStateException(\"No goto on %s from state \" + state);"
+            .formatted(nonTerminalNames.get(nonTerminal));
+        final var cases = new ArrayList<String>();
+        for (int state = 0; state < statusCount; state++) {
+            final var target = table.gotos()[state * table.nonTerminalCount() + nonTerminal];
+            if (target >= 0) {
+                cases.add("case %d -> %d;".formatted(state, target));
+            }
+        }
+        line(0, "");
+        line(1, "private static int %s(int state) {", gotoName(nonTerminal));
+        if (cases.isEmpty()) {
+            // 例如开始符号, 它只会被接受而不会被规约
+            line(2, error);
+        } else {
+            line(2, "return switch (state) {");
+            cases.forEach(text -> line(3, text));
+            line(3, "default -> " + error);
+            line(2, "};");
+        }
+        line(1, "}");
+    }
+
+    /**
+     * 生成列表的 continuesList 与 flushList 方法. 栈顶为列表 L 的状态都是经 L 转移得到的, 所以可以按状态区分列表
+     */
+    private void emitLists() {
+        final var statusCount = table.statuses().length;
+        final var width = table.terminalWidth();
+        final var listOfState = new int[statusCount];
+        Arrays.fill(listOfState, -1);
+        for (int state = 0; state < statusCount; state++) {
+            for (int nonTerminal = 0; nonTerminal < table.nonTerminalCount(); nonTerminal++) {
+                final var target = table.gotos()[state * table.nonTerminalCount() + nonTerminal];
+                if (target >= 0 && table.listBases()[nonTerminal] != 0) {
+                    listOfState[target] = nonTerminal;
+                }
+            }
+        }
+
+        line(0, "");
+        line(1, "private static boolean continuesList(int state, int code) {");
+        line(2, "return switch (state) {");
+        for (int state = 0; state < statusCount; state++) {
+            final var list = listOfState[state];
+            if (list < 0) {
+                continue;
+            }
+            final var codes = new ArrayList<String>();
+            for (int column = 0; column < width; column++) {
+                final var action = table.actions()[state * width + column];
+                if (CompiledTable.kindOf(action) == CompiledTable.SHIFT && table.continuesList(list, column - 1)) {
+                    codes.add("code == " + (column - 1));
+                }
+            }
+            line(3, "case %d -> %s;", state, codes.isEmpty() ? "false" : String.join(" || ", codes));
+        }
+        line(3, "default -> false;");
+        line(2, "};");
+        line(1, "}");
+
+        line(0, "");
+        line(1, "private static void flushList(int state, int count, ParseEventRing.Sink sink) {");
+        line(2, "final int base;");
+        line(2, "final int recursion;");
+        line(2, "switch (state) {");
+        for (int state = 0; state < statusCount; state++) {
+            final var list = listOfState[state];
+            if (list >= 0) {
+                line(3, "case %d -> {", state);
+                line(4, "base = %d;", table.listBases()[list]);
+                line(4, "recursion = %d;", table.listRecursions()[list]);
+                line(3, "}");
+            }
+        }
+        line(3, "default -> throw new IllegalStateException(\"No list on state \" + state);");
+        line(2, "}");
+        line(2, "sink.accept(REDUCE, state, base);");
+        line(2, "for (int idx = 1; idx < count; idx++) {");
+        line(3, "sink.accept(REDUCE, state, recursion);");
+        line(2, "}");
+        line(1, "}");
+    }
+
+    private String gotoName(int nonTerminal) {
+        final var name = nonTerminalNames.get(nonTerminal);
+        return name.matches("[A-Za-z_][A-Za-z0-9_]*") ? "goto_" + name : "goto_" + nonTerminal;
+    }
+
+    private void line(int indent, String format, Object... args) {
+        out.append("    ".repeat(indent)).append(args.length == 0 ? format : format.formatted(args)).append('\n');
+    }
+}
@@ -16,6 +16,8 @@ import java.util.List;
  *
  */
 public class IRGenerator implements ActionObserver {
+    /** 当前动作在源代码中的起始偏移, 仅在语法分析器开启位置跟踪时更新, 生成指令时可通过 Instruction#setPosition 记录 */
+    private long position = -1;
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
@@ -36,6 +38,11 @@ public class IRGenerator implements ActionObserver {
         throw new NotImplementedException();
     }
 
+    @Override
+    public void atPosition(long offset) {
+        position = offset;
+    }
+
     @Override
     public void setSymbolTable(SymbolTable table) {
         // TODO
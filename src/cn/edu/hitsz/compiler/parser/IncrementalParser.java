@@ -0,0 +1,282 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 以语句为单位复用分析结果的 LR 驱动程序
+ * <br>
+ * 源代码被切分为若干段 (通常每段是一条以分号结尾的语句), 每段的分析过程分为两部分:
+ * <ul>
+ *     <li>边界部分: 以该段第一个词法单元为向前看符号, 执行移进它之前的所有规约. 这些规约依赖于之前各段留下的栈, 每次都重新执行,
+ *     对于本项目的文法通常只有列表的计数, 一个也不输出</li>
+ *     <li>段内部分: 从移进第一个词法单元开始, 直到移进最后一个词法单元为止. 若这一过程从未弹出该段开始时的栈顶状态, 也没有涉及列表,
+ *     则其所有动作只取决于开始时的栈顶状态与段内的词法单元, 于是可以把规约序列与压入栈中的状态序列缓存在段中</li>
+ * </ul>
+ * 再次分析时, 若某段的词法单元未变且开始时的栈顶状态与缓存时相同, 则直接压入缓存的状态, 不必逐个处理其词法单元.
+ * 这样, 修改一条语句之后只需重新分析这一条语句, 其余语句各用常数时间即可接上; 但每次分析仍要从头逐段接上所有段,
+ * 耗时与段数成正比.
+ * <br>
+ * 分析表与 SyntaxAnalyzer 使用的 CompiledTable 相同: 改写为左递归的列表按同样的规则推迟并补发规约, 消除了单产生式时规约链一步完成.
+ * 各段输出的规约以产生式编号的数组保存在段中, 只有内容改变时才会换成新的数组, 调用者可以按引用判断某段的输出是否需要重新生成.
+ * <br>
+ * 该驱动程序只产生规约序列, 不通知观察者.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer
+ */
+public class IncrementalParser {
+    private static final int[] NONE = new int[0];
+
+    private final CompiledTable table;
+    private int reusedCount;
+
+    public IncrementalParser(CompiledTable table) {
+        this.table = table;
+    }
+
+    /**
+     * 源代码中的一段, 及其上一次分析时缓存的结果
+     */
+    public static class Segment {
+        private final TokenBuffer tokens;
+        /** 段内部分开始时的栈顶状态, 为 -1 表示没有可用的缓存 */
+        private int startState = -1;
+        private int[] pushedStates;
+        private int[] pushedSymbols;
+        private int[] boundary = NONE;
+        private int[] reductions = NONE;
+
+        /**
+         * @param tokens 该段的词法分析结果, 末尾的 EOF 不属于该段
+         */
+        public Segment(TokenBuffer tokens) {
+            this.tokens = tokens;
+        }
+
+        public TokenBuffer getTokens() {
+            return tokens;
+        }
+
+        /**
+         * @return 最近一次分析中边界部分输出的规约, 按规约顺序排列的产生式编号
+         */
+        public int[] boundaryReductions() {
+            return boundary;
+        }
+
+        /**
+         * @return 最近一次分析中段内部分输出的规约, 按规约顺序排列的产生式编号
+         */
+        public int[] reductions() {
+            return reductions;
+        }
+
+        private int tokenCount() {
+            return tokens.size() - 1;
+        }
+    }
+
+    /**
+     * 按顺序分析所有段, 能复用缓存的段直接复用, 其余段重新分析并更新缓存. 各段的规约由
+     * {@link Segment#boundaryReductions()} 与 {@link Segment#reductions()} 取得
+     *
+     * @param segments 组成源代码的各段
+     * @return 以 EOF 为向前看符号执行的规约 (不含接受时的起始产生式), 按规约顺序排列的产生式编号
+     * @throws RuntimeException 源代码不符合文法
+     */
+    public int[] parse(List<Segment> segments) {
+        reusedCount = 0;
+        top = 0;
+        states[0] = table.initState();
+        symbols[0] = -1;
+        pending[0] = 0;
+        for (int idx = 0; idx < segments.size(); idx++) {
+            final var segment = segments.get(idx);
+            if (segment.tokenCount() == 0) {
+                continue;
+            }
+            scratch.clear();
+            final var first = advance(segment.tokens.kindCode(0), idx);
+            if (CompiledTable.kindOf(first) != CompiledTable.SHIFT) {
+                throw failure(idx);
+            }
+            if (!scratch.matches(segment.boundary)) {
+                segment.boundary = scratch.toArray();
+            }
+            final var start = top;
+            if (states[start] == segment.startState) {
+                while (top + segment.pushedStates.length >= states.length) {
+                    grow();
+                }
+                System.arraycopy(segment.pushedStates, 0, states, top + 1, segment.pushedStates.length);
+                System.arraycopy(segment.pushedSymbols, 0, symbols, top + 1, segment.pushedSymbols.length);
+                Arrays.fill(pending, top + 1, top + 1 + segment.pushedStates.length, 0);
+                top += segment.pushedStates.length;
+                reusedCount++;
+                continue;
+            }
+
+            // 重新分析段内部分, 同时记录栈的最低深度与是否涉及列表, 以判断能否缓存
+            scratch.clear();
+            lowest = start;
+            touchesList = false;
+            push(CompiledTable.operandOf(first), -1, 0);
+            for (int pos = 1; pos < segment.tokenCount(); pos++) {
+                final var action = advance(segment.tokens.kindCode(pos), idx);
+                if (CompiledTable.kindOf(action) != CompiledTable.SHIFT) {
+                    throw failure(idx);
+                }
+                push(CompiledTable.operandOf(action), -1, 0);
+            }
+            segment.reductions = scratch.toArray();
+            if (lowest >= start && !touchesList) {
+                segment.startState = states[start];
+                segment.pushedStates = Arrays.copyOfRange(states, start + 1, top + 1);
+                segment.pushedSymbols = Arrays.copyOfRange(symbols, start + 1, top + 1);
+            } else {
+                segment.startState = -1;
+            }
+        }
+
+        scratch.clear();
+        final var end = advance(TokenKind.eof().getCode(), segments.size());
+        if (CompiledTable.kindOf(end) != CompiledTable.ACCEPT) {
+            throw failure(segments.size());
+        }
+        return scratch.toArray();
+    }
+
+    /**
+     * @return 最近一次 parse 中直接复用了缓存的段数
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /** 状态编号, 非终结符编号 (终结符为 -1) 与列表上尚未补发的规约数 */
+    private int[] states = new int[64];
+    private int[] symbols = new int[64];
+    private int[] pending = new int[64];
+    private int top;
+    /** 段内部分分析过程中栈顶下标的最小值 */
+    private int lowest;
+    /** 段内部分分析过程中是否规约或补发了列表 */
+    private boolean touchesList;
+    /** 当前部分输出的规约 */
+    private final Reductions scratch = new Reductions();
+
+    /**
+     * 以 code 为向前看符号执行规约, 直到遇到移进或接受动作, 规则与 SyntaxAnalyzer 相同
+     *
+     * @return 最终的移进或接受动作, 尚未执行
+     */
+    private int advance(int code, int segment) {
+        while (true) {
+            final var action = table.action(states[top], code);
+            final var kind = CompiledTable.kindOf(action);
+            if (pending[top] > 0 && (kind != CompiledTable.SHIFT || !table.continuesList(symbols[top], code))) {
+                flushList();
+            }
+            switch (kind) {
+                case CompiledTable.SHIFT, CompiledTable.ACCEPT -> {
+                    return action;
+                }
+                case CompiledTable.REDUCE -> reduce(CompiledTable.operandOf(action), code);
+                default -> throw failure(segment);
+            }
+        }
+    }
+
+    private void reduce(int production, int code) {
+        final var length = table.productionLengths()[production];
+        final var count = switch (table.listRoles()[production]) {
+            case CompiledTable.LIST_BASE -> 1;
+            case CompiledTable.LIST_APPEND -> pending[top - length + 1] + 1;
+            default -> 0;
+        };
+        top -= length;
+        lowest = Math.min(lowest, top);
+        final var chain = count == 0 ? table.chainOf(states[top], table.productionHeads()[production], code) : 0;
+        push(table.gotoState(states[top], production), table.productionHeads()[production], count);
+        if (count == 0) {
+            scratch.add(production);
+        } else {
+            touchesList = true;
+        }
+        if (chain != 0) {
+            final var units = table.chains()[chain];
+            for (int idx = 0; idx < units.length; idx += 2) {
+                states[top] = units[idx + 1];
+                symbols[top] = table.productionHeads()[units[idx]];
+                scratch.add(units[idx]);
+            }
+        }
+    }
+
+    /**
+     * 补发栈顶列表推迟的规约, 顺序同 SyntaxAnalyzer
+     */
+    private void flushList() {
+        final var list = symbols[top];
+        scratch.add(table.listBases()[list]);
+        for (int count = pending[top] - 1; count > 0; count--) {
+            scratch.add(table.listRecursions()[list]);
+        }
+        pending[top] = 0;
+        touchesList = true;
+    }
+
+    private void push(int state, int symbol, int count) {
+        if (++top == states.length) {
+            grow();
+        }
+        states[top] = state;
+        symbols[top] = symbol;
+        pending[top] = count;
+    }
+
+    private void grow() {
+        states = Arrays.copyOf(states, states.length * 2);
+        symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        pending = Arrays.copyOf(pending, pending.length * 2);
+    }
+
+    private static RuntimeException failure(int segment) {
+        return new RuntimeException("Syntax analysis failed in statement %d! ".formatted(segment + 1) +
+            "It is not a sentence pattern corresponding to grammar.");
+    }
+
+    /**
+     * 可增长的产生式编号序列
+     */
+    private static final class Reductions {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        private void add(int production) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = production;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private boolean matches(int[] other) {
+            return Arrays.equals(values, 0, size, other, 0, other.length);
+        }
+
+        private int[] toArray() {
+            return size == 0 ? NONE : Arrays.copyOf(values, size);
+        }
+    }
+}
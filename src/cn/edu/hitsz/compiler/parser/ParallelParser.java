@@ -0,0 +1,367 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 以语句为单位推测并行的 LR 驱动程序
+ * <br>
+ * 对于本项目的文法, 每条语句的第一个词法单元都是在同一个状态 (语句开始状态) 下移进的. 于是词法单元流按分号切分为若干块,
+ * 各块在线程池中并行分析: 块内的每条语句都假定从语句开始状态出发, 从移进第一个词法单元起, 到移进最后一个分号为止,
+ * 动作序列记录在数组中. 若这一过程弹出了语句开始状态之下的状态或遇到了错误, 则放弃对该语句的推测.
+ * <br>
+ * 之后在当前线程按源代码顺序拼接: 每条语句先以其第一个词法单元为向前看符号执行语句之间的规约 (包括列表的推迟与补发),
+ * 若此时栈顶恰为语句开始状态且推测成功, 则直接压入推测得到的状态并按顺序转发其动作, 否则在真实的栈上顺序地重新分析该语句.
+ * 因为推测成功的语句从未访问语句开始状态之下的栈, 它的动作只取决于这个状态, 所以拼接的结果与顺序分析完全相同.
+ * 拼接与推测流水进行, 每个块推测完毕即可拼接, 拼接后的推测结果随即释放, 同时留在内存中的只有尚未拼接的块.
+ * <br>
+ * 若分析表消除了单产生式, 推测与拼接时都按 {@link CompiledTable#chainOf(int, int, int)} 一步完成单产生式的规约链, 链上的规约照常转发.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setParallelParsing(ForkJoinPool, int)
+ */
+class ParallelParser {
+    /** 语句以该种词法单元结尾 */
+    private static final String SEPARATOR = "Semicolon";
+
+    private final CompiledTable table;
+    private final TokenBuffer tokens;
+    private final ParseEventRing.Sink sink;
+
+    /** 拼接时的真实栈, 分别为状态编号, 非终结符编号 (终结符为 -1) 与列表上尚未补发的规约数 */
+    private int[] states = new int[64];
+    private int[] symbols = new int[64];
+    private int[] pending = new int[64];
+    private int top = 0;
+    /** 最近一次分析中推测成功并被直接拼接的语句数 */
+    private int speculatedCount = 0;
+
+    /**
+     * 一条语句推测分析的结果
+     *
+     * @param events  动作序列, 每个动作占三个 int, 同 {@link ParseEventRing}
+     * @param states  分析结束时语句开始状态之上的各状态
+     * @param symbols 与 states 对应的文法符号
+     */
+    private record Speculation(int[] events, int[] states, int[] symbols) {
+    }
+
+    /**
+     * 连续的若干条语句, 由线程池中的一个任务推测分析
+     */
+    private final class Chunk {
+        private final int from;
+        private final int to;
+        private final List<Integer> ends = new ArrayList<>();
+        private final List<Speculation> results = new ArrayList<>();
+
+        private Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private void speculate(int separator, int start) {
+            int begin = from;
+            for (int pos = from; pos < to; pos++) {
+                if (tokens.kindCode(pos) == separator || pos == to - 1) {
+                    ends.add(pos + 1);
+                    results.add(ParallelParser.this.speculate(begin, pos + 1, start));
+                    begin = pos + 1;
+                }
+            }
+        }
+    }
+
+    ParallelParser(CompiledTable table, TokenBuffer tokens, ParseEventRing.Sink sink) {
+        this.table = table;
+        this.tokens = tokens;
+        this.sink = sink;
+    }
+
+    /**
+     * 分析整个词法单元流, 并按源代码顺序把所有动作交给事件的消费者
+     *
+     * @param pool        推测分析所用的线程池
+     * @param chunkTokens 每块大约包含的词法单元数
+     * @throws RuntimeException 词法单元流不是文法的句子
+     */
+    void parse(ForkJoinPool pool, int chunkTokens) {
+        final var separator = TokenKind.fromString(SEPARATOR).getCode();
+        final var eofPos = tokens.size() - 1;
+        speculatedCount = 0;
+        top = 0;
+        states[0] = table.initState();
+        symbols[0] = -1;
+        pending[0] = 0;
+
+        // 块的边界放在每隔约 chunkTokens 个词法单元后的第一个分号之后
+        final var chunks = new ArrayList<Chunk>();
+        int from = 0;
+        while (from < eofPos) {
+            int to = Math.min(from + Math.max(chunkTokens, 1), eofPos);
+            while (to < eofPos && tokens.kindCode(to - 1) != separator) {
+                to++;
+            }
+            chunks.add(new Chunk(from, to));
+            from = to;
+        }
+
+        final var start = statementStart(separator);
+        final var tasks = new ArrayList<ForkJoinTask<?>>();
+        try {
+            if (start >= 0) {
+                for (final var chunk : chunks) {
+                    tasks.add(pool.submit(() -> chunk.speculate(separator, start)));
+                }
+            }
+            int begin = 0;
+            for (int idx = 0; idx < chunks.size(); idx++) {
+                final var chunk = chunks.get(idx);
+                if (start < 0) {
+                    chunk.speculate(separator, -1);
+                } else {
+                    tasks.get(idx).join();
+                }
+                for (int stmt = 0; stmt < chunk.ends.size(); stmt++) {
+                    final var end = chunk.ends.get(stmt);
+                    stitch(begin, end, start, chunk.results.get(stmt));
+                    // 拼接后推测结果即不再需要, 不等整个分析结束就交给 GC
+                    chunk.results.set(stmt, null);
+                    begin = end;
+                }
+                chunks.set(idx, null);
+                if (start >= 0) {
+                    tasks.set(idx, null);
+                }
+            }
+            final var accept = advance(eofPos);
+            if (CompiledTable.kindOf(accept) != CompiledTable.ACCEPT) {
+                throw SyntaxAnalyzer.syntaxError(tokens, eofPos);
+            }
+            sink.accept(CompiledTable.ACCEPT, states[top], 0);
+        } finally {
+            tasks.stream().filter(Objects::nonNull).forEach(task -> task.cancel(false));
+        }
+    }
+
+    /**
+     * @return 最近一次分析中推测成功并被直接拼接的语句数
+     */
+    int getSpeculatedCount() {
+        return speculatedCount;
+    }
+
+    /**
+     * 顺序分析第一条语句, 求出第二条语句开始时的栈顶状态
+     *
+     * @return 语句开始状态, 无法求出 (例如只有一条语句或第一条语句有错误) 时为 -1
+     */
+    private int statementStart(int separator) {
+        final var eofPos = tokens.size() - 1;
+        int end = 0;
+        while (end < eofPos && tokens.kindCode(end) != separator) {
+            end++;
+        }
+        if (end + 1 >= eofPos) {
+            return -1;
+        }
+        final var probe = new ParallelParser(table, tokens, (kind, state, operand) -> {
+        });
+        probe.states[0] = table.initState();
+        try {
+            probe.stitch(0, end + 1, -1, null);
+            return CompiledTable.kindOf(probe.advance(end + 1)) == CompiledTable.SHIFT ? probe.states[probe.top] : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 推测分析一条语句, 由线程池中的线程执行, 只读取分析表与词法单元流
+     *
+     * @return 推测的结果, 推测失败时为 null
+     */
+    private Speculation speculate(int from, int to, int start) {
+        if (start < 0) {
+            return null;
+        }
+        var localStates = new int[16];
+        var localSymbols = new int[16];
+        var events = new int[(to - from) * 9];
+        int localTop = 0;
+        int count = 0;
+        localStates[0] = start;
+        for (int pos = from; pos < to; pos++) {
+            final var code = tokens.kindCode(pos);
+            while (true) {
+                final var action = table.action(localStates[localTop], code);
+                final var kind = CompiledTable.kindOf(action);
+                final var operand = CompiledTable.operandOf(action);
+                int chain = 0;
+                if (kind == CompiledTable.REDUCE && pos != from) {
+                    final var length = table.productionLengths()[operand];
+                    if (length > localTop || table.listRoles()[operand] != CompiledTable.LIST_NONE) {
+                        return null;
+                    }
+                    localTop -= length;
+                    chain = table.chainOf(localStates[localTop], table.productionHeads()[operand], code);
+                    localStates[localTop + 1] = table.gotoState(localStates[localTop], operand);
+                    localSymbols[localTop + 1] = table.productionHeads()[operand];
+                } else if (kind == CompiledTable.SHIFT) {
+                    localStates[localTop + 1] = operand;
+                    localSymbols[localTop + 1] = -1;
+                } else {
+                    return null;
+                }
+                if (++localTop + 1 == localStates.length) {
+                    localStates = Arrays.copyOf(localStates, localStates.length * 2);
+                    localSymbols = Arrays.copyOf(localSymbols, localSymbols.length * 2);
+                }
+                if (count + 3 > events.length) {
+                    events = Arrays.copyOf(events, events.length * 2);
+                }
+                events[count++] = kind;
+                events[count++] = localStates[localTop];
+                events[count++] = kind == CompiledTable.SHIFT ? pos : operand;
+                // 单产生式的规约链一步完成, 栈顶直接换成链末的非终结符与状态, 同 SyntaxAnalyzer
+                if (chain != 0) {
+                    final var units = table.chains()[chain];
+                    if (count + units.length / 2 * 3 > events.length) {
+                        events = Arrays.copyOf(events, Math.max(events.length * 2, count + units.length / 2 * 3));
+                    }
+                    for (int idx = 0; idx < units.length; idx += 2) {
+                        localStates[localTop] = units[idx + 1];
+                        localSymbols[localTop] = table.productionHeads()[units[idx]];
+                        events[count++] = CompiledTable.REDUCE;
+                        events[count++] = units[idx + 1];
+                        events[count++] = units[idx];
+                    }
+                }
+                if (kind == CompiledTable.SHIFT) {
+                    break;
+                }
+            }
+        }
+        return new Speculation(Arrays.copyOf(events, count),
+            Arrays.copyOfRange(localStates, 1, localTop + 1), Arrays.copyOfRange(localSymbols, 1, localTop + 1));
+    }
+
+    /**
+     * 在真实的栈上接上一条语句, 能直接使用推测结果时转发其动作, 否则顺序分析
+     */
+    private void stitch(int from, int to, int start, Speculation speculation) {
+        if (from == to) {
+            return;
+        }
+        var action = advance(from);
+        if (speculation != null && states[top] == start && CompiledTable.kindOf(action) == CompiledTable.SHIFT) {
+            final var pushed = speculation.states();
+            while (top + pushed.length >= states.length) {
+                grow();
+            }
+            for (int idx = 0; idx < pushed.length; idx++) {
+                states[top + 1 + idx] = pushed[idx];
+                symbols[top + 1 + idx] = speculation.symbols()[idx];
+                pending[top + 1 + idx] = 0;
+            }
+            top += pushed.length;
+            final var events = speculation.events();
+            for (int idx = 0; idx < events.length; idx += 3) {
+                sink.accept(events[idx], events[idx + 1], events[idx + 2]);
+            }
+            speculatedCount++;
+            return;
+        }
+        for (int pos = from; pos < to; pos++) {
+            if (pos != from) {
+                action = advance(pos);
+            }
+            if (CompiledTable.kindOf(action) != CompiledTable.SHIFT) {
+                throw SyntaxAnalyzer.syntaxError(tokens, pos);
+            }
+            push(CompiledTable.operandOf(action), -1, 0);
+            sink.accept(CompiledTable.SHIFT, states[top], pos);
+        }
+    }
+
+    /**
+     * 以 pos 处的词法单元为向前看符号执行规约, 直到遇到移进或接受动作, 规则与 SyntaxAnalyzer 相同
+     *
+     * @return 最终的移进或接受动作, 尚未执行
+     */
+    private int advance(int pos) {
+        final var code = tokens.kindCode(pos);
+        while (true) {
+            final var action = table.action(states[top], code);
+            final var kind = CompiledTable.kindOf(action);
+            if (pending[top] > 0 && (kind != CompiledTable.SHIFT || !table.continuesList(symbols[top], code))) {
+                flushList();
+            }
+            switch (kind) {
+                case CompiledTable.SHIFT, CompiledTable.ACCEPT -> {
+                    return action;
+                }
+                case CompiledTable.REDUCE -> reduce(CompiledTable.operandOf(action), code);
+                default -> throw SyntaxAnalyzer.syntaxError(tokens, pos);
+            }
+        }
+    }
+
+    /**
+     * 以 code 为向前看符号规约, 若分析表消除了单产生式, 随后的单产生式规约链一步完成
+     */
+    private void reduce(int production, int code) {
+        final var length = table.productionLengths()[production];
+        final var count = switch (table.listRoles()[production]) {
+            case CompiledTable.LIST_BASE -> 1;
+            case CompiledTable.LIST_APPEND -> pending[top - length + 1] + 1;
+            default -> 0;
+        };
+        top -= length;
+        final var chain = count == 0 ? table.chainOf(states[top], table.productionHeads()[production], code) : 0;
+        push(table.gotoState(states[top], production), table.productionHeads()[production], count);
+        if (count == 0) {
+            sink.accept(CompiledTable.REDUCE, states[top], production);
+        }
+        if (chain != 0) {
+            final var units = table.chains()[chain];
+            for (int idx = 0; idx < units.length; idx += 2) {
+                states[top] = units[idx + 1];
+                symbols[top] = table.productionHeads()[units[idx]];
+                sink.accept(CompiledTable.REDUCE, units[idx + 1], units[idx]);
+            }
+        }
+    }
+
+    private void flushList() {
+        final var list = symbols[top];
+        sink.accept(CompiledTable.REDUCE, states[top], table.listBases()[list]);
+        for (int count = pending[top] - 1; count > 0; count--) {
+            sink.accept(CompiledTable.REDUCE, states[top], table.listRecursions()[list]);
+        }
+        pending[top] = 0;
+    }
+
+    private void push(int state, int symbol, int count) {
+        if (++top == states.length) {
+            grow();
+        }
+        states[top] = state;
+        symbols[top] = symbol;
+        pending[top] = count;
+    }
+
+    private void grow() {
+        states = Arrays.copyOf(states, states.length * 2);
+        symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        pending = Arrays.copyOf(pending, pending.length * 2);
+    }
+}
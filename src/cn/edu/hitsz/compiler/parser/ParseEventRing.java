@@ -0,0 +1,183 @@
+package cn.edu.hitsz.compiler.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 语法分析事件的环形缓冲区, 用于让观察者在各自的线程上与 LR 驱动程序并发执行
+ * <br>
+ * 驱动程序是唯一的生产者, 每个事件只占三个 int: 动作类型, 状态编号, 以及移进的词法单元位置或规约的产生式编号.
+ * 每个消费者拥有自己的线程与读取进度, 按批读取生产者已发布的事件. 生产者每写入 BATCH 个事件才发布一次,
+ * 当最慢的消费者落后整整一个缓冲区时, 生产者会等待它跟上.
+ * <br>
+ * 消费者抛出的异常会使其停止消费, 并在 {@link #finish()} 时由生产者线程重新抛出.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setAsyncObservers(int)
+ */
+public class ParseEventRing {
+    /**
+     * 事件的消费者
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @param kind    动作类型, 取值同 CompiledTable 中的动作类型
+         * @param state   状态编号
+         * @param operand 移进的词法单元位置或规约的产生式编号
+         */
+        void accept(int kind, int state, int operand);
+    }
+
+    /** 每次发布的事件数 */
+    private static final int BATCH = 256;
+    private static final int STRIDE = 3;
+    private static final int SPIN_TRIES = 128;
+
+    private final int[] events;
+    private final int mask;
+    private final List<Sink> sinks = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<AtomicLong> cursors = new ArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean finished = false;
+
+    /** 下一个待写入事件的序号, 只由生产者访问 */
+    private long next = 0;
+    /** 在不检查消费者进度的情况下, 生产者可以写到的序号 */
+    private long gate;
+
+    /**
+     * @param capacity 缓冲区可容纳的事件数, 会向上取整为 2 的幂且不小于 BATCH
+     */
+    public ParseEventRing(int capacity) {
+        final var size = Integer.highestOneBit(Math.max(capacity, BATCH) - 1) << 1;
+        this.events = new int[size * STRIDE];
+        this.mask = size - 1;
+        this.gate = size;
+    }
+
+    /**
+     * 添加一个消费者, 须在 start 之前调用
+     *
+     * @param sink 消费者
+     */
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * 为每个消费者启动一个线程
+     */
+    public void start() {
+        for (int idx = 0; idx < sinks.size(); idx++) {
+            final var sink = sinks.get(idx);
+            final var cursor = new AtomicLong();
+            cursors.add(cursor);
+            final var thread = new Thread(() -> consume(sink, cursor), "parse-observer-" + idx);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * 写入一个事件, 缓冲区已满时等待最慢的消费者
+     */
+    public void publish(int kind, int state, int operand) {
+        if (next == gate) {
+            awaitCapacity();
+        }
+        final var slot = (int) (next & mask) * STRIDE;
+        events[slot] = kind;
+        events[slot + 1] = state;
+        events[slot + 2] = operand;
+        if ((++next & (BATCH - 1)) == 0) {
+            published.lazySet(next);
+        }
+    }
+
+    /**
+     * 发布剩余的事件, 等待所有消费者处理完毕
+     *
+     * @throws RuntimeException 有消费者在处理事件时抛出了异常
+     */
+    public void finish() {
+        published.set(next);
+        finished = true;
+        for (final var thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for observers", e);
+            }
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Observer failed", failure.get());
+        }
+    }
+
+    private void awaitCapacity() {
+        for (int tries = 0; ; tries++) {
+            long slowest = Long.MAX_VALUE;
+            for (final var cursor : cursors) {
+                slowest = Math.min(slowest, cursor.get());
+            }
+            if (slowest == Long.MAX_VALUE) {
+                // 所有消费者都已出错退出, 之后的事件不再有人读取
+                gate = Long.MAX_VALUE;
+                return;
+            }
+            if (next < slowest + mask + 1) {
+                gate = slowest + mask + 1;
+                return;
+            }
+            // 让消费者看到已写入但未满一批的事件, 否则它们可能一直等待
+            published.set(next);
+            idle(tries);
+        }
+    }
+
+    private void consume(Sink sink, AtomicLong cursor) {
+        long position = 0;
+        try {
+            for (int tries = 0; ; tries++) {
+                final var available = published.get();
+                if (available == position) {
+                    if (finished && published.get() == position) {
+                        return;
+                    }
+                    idle(tries);
+                    continue;
+                }
+                tries = 0;
+                for (; position < available; position++) {
+                    final var slot = (int) (position & mask) * STRIDE;
+                    sink.accept(events[slot], events[slot + 1], events[slot + 2]);
+                }
+                cursor.lazySet(position);
+            }
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            cursor.set(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 等待时先自旋, 再让出处理器, 最后短暂休眠
+     */
+    private static void idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+}
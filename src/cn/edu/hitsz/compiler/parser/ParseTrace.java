@@ -0,0 +1,212 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LR 驱动程序的执行记录, 只保留最近的若干步
+ * <br>
+ * 每一步只占三个 int: 动作类型, 状态编号与当时的向前看词法单元位置, 依次写入固定大小的环形数组, 记录时不构造任何对象.
+ * 规约时动作类型的高位存放产生式编号, 其余动作的文法符号即向前看词法单元的类型, 转储时再从词法单元流中取出.
+ * 规约与随后的 goto 合为一步, 状态编号为 goto 到的状态, 转储时再展开为两行, 以免分析时多写一次.
+ * 此外还统计总步数, 规约数, 栈的最大深度 (在移进时统计) 与分析耗时, 只在转储时才把这些记录翻译成文本.
+ * <br>
+ * 写入时没有任何判断: 环形数组的容量取为 2 的幂, 写入位置由总步数按位与求出. 关闭跟踪时使用 {@link #disabled()}
+ * 返回的只有一步容量的记录, 它从不转储, 使调用者不必判断记录是否存在.
+ * SyntaxAnalyzer 的主循环把总步数, 规约数与最大深度放在局部变量中, 通过 {@link #put} 直接写入环形数组, 离开循环时再用
+ * {@link #update} 写回, 以免每一步都读写这些字段.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setTraceCapacity(int)
+ */
+class ParseTrace {
+    private static final int STRIDE = 3;
+    private static final int KIND_BITS = 2;
+
+    private final int[] steps;
+    /** 保留的步数减一, 保留的步数为 2 的幂 */
+    private final int mask;
+    private final boolean enabled;
+    /** 已记录的总步数, 下一步写入第 {@code total & mask} 个位置 */
+    private long total = 0;
+    private long reductions = 0;
+    private int maxDepth = 0;
+    private long startNanos;
+    private long elapsedNanos = 0;
+
+    /**
+     * @param capacity 保留的步数, 至少为 1, 向上取为 2 的幂
+     */
+    ParseTrace(int capacity) {
+        this(capacity, true);
+    }
+
+    private ParseTrace(int capacity, boolean enabled) {
+        final var rounded = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+        this.steps = new int[rounded * STRIDE];
+        this.mask = rounded - 1;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return 关闭跟踪时使用的记录, 只有一步容量, 不能转储
+     */
+    static ParseTrace disabled() {
+        return new ParseTrace(1, false);
+    }
+
+    /**
+     * @return 是否开启了跟踪
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 清空记录并开始计时
+     */
+    void start() {
+        total = 0;
+        reductions = 0;
+        maxDepth = 0;
+        elapsedNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * 停止计时
+     */
+    void stop() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 记录一次移进
+     *
+     * @param state 移进后的状态编号
+     * @param token 词法单元的位置
+     * @param depth 移进后栈顶的下标
+     */
+    void shift(int state, int token, int depth) {
+        record(CompiledTable.SHIFT, state, token);
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /**
+     * 记录一次规约及随后的 goto
+     *
+     * @param state      goto 到的状态编号
+     * @param production 产生式编号
+     * @param token      向前看词法单元的位置
+     */
+    void reduce(int state, int production, int token) {
+        record(reduceKind(production), state, token);
+        reductions++;
+    }
+
+    /**
+     * 将一步直接写入环形数组
+     *
+     * @param steps 即 {@link #steps()}
+     * @param slot  写入的位置, 即总步数与 {@link #mask()} 按位与的结果
+     * @param kind  动作类型, 规约时由 {@link #reduceKind(int)} 求出
+     * @param state 状态编号
+     * @param token 向前看词法单元的位置
+     */
+    static void put(int[] steps, int slot, int kind, int state, int token) {
+        final var base = slot * STRIDE;
+        steps[base] = kind;
+        steps[base + 1] = state;
+        steps[base + 2] = token;
+    }
+
+    /**
+     * @return 规约该产生式时记录的动作类型
+     */
+    static int reduceKind(int production) {
+        return production << KIND_BITS | CompiledTable.REDUCE;
+    }
+
+    int[] steps() {
+        return steps;
+    }
+
+    int mask() {
+        return mask;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long reductions() {
+        return reductions;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * 写回驱动程序在局部变量中统计的数据
+     */
+    void update(long total, long reductions, int maxDepth) {
+        this.total = total;
+        this.reductions = reductions;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * 记录其它动作, 例如接受与出错
+     *
+     * @param kind  动作类型, 规约时高位为产生式编号
+     * @param state 栈顶的状态编号
+     * @param token 向前看词法单元的位置
+     */
+    void record(int kind, int state, int token) {
+        put(steps, (int) total++ & mask, kind, state, token);
+    }
+
+    /**
+     * 将统计信息与保留的各步翻译成文本
+     *
+     * @param productions 分析表中的各产生式, 以产生式编号为下标
+     * @param tokens      分析的词法单元流
+     * @return 每行一项, 先是统计信息, 再按执行顺序列出保留的各步
+     */
+    List<String> lines(Production[] productions, TokenBuffer tokens) {
+        final var capacity = mask + 1;
+        final var seconds = elapsedNanos / 1e9;
+        final var lines = new ArrayList<String>();
+        lines.add("steps: %d, reductions: %d, max stack depth: %d".formatted(total, reductions, maxDepth + 1));
+        lines.add("elapsed: %.3f ms, reductions per second: %.0f".formatted(
+            elapsedNanos / 1e6, seconds > 0 ? reductions / seconds : 0));
+        final var kept = Math.min(total, capacity);
+        lines.add("last %d steps:".formatted(kept));
+        for (long seq = total - kept; seq < total; seq++) {
+            final var base = ((int) seq & mask) * STRIDE;
+            final var kind = steps[base] & ((1 << KIND_BITS) - 1);
+            final var state = steps[base + 1];
+            final var token = steps[base + 2];
+            final var at = "token %d at %s".formatted(token, tokens.positions().describe(tokens.start(token)));
+            if (kind == CompiledTable.REDUCE) {
+                final var production = productions[steps[base] >>> KIND_BITS];
+                lines.add("%d\treduce\t%s\t%s".formatted(seq, production, at));
+                lines.add("%d\tgoto\tstate %d\t%s\t%s".formatted(seq, state, production.head().getTermName(), at));
+                continue;
+            }
+            final var name = switch (kind) {
+                case CompiledTable.SHIFT -> "shift";
+                case CompiledTable.ACCEPT -> "accept";
+                default -> "error";
+            };
+            lines.add("%d\t%s\tstate %d\t%s\t%s".formatted(seq, name, state,
+                tokens.kind(token).getIdentifier(), at));
+        }
+        return lines;
+    }
+}
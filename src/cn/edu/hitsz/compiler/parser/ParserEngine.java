@@ -0,0 +1,29 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+
+/**
+ * 预先由分析表生成的 LR 驱动程序, 可以代替 SyntaxAnalyzer 中解释执行分析表的驱动程序
+ * <br>
+ * 引擎只负责按分析表执行移进与规约, 并把每个动作以与 {@link ParseEventRing} 相同的三个 int 的形式交给事件的消费者,
+ * 由 SyntaxAnalyzer 把这些事件分派给各个观察者. 引擎对改写为左递归的列表的处理与 SyntaxAnalyzer 相同, 所以观察者看到的事件完全一致.
+ *
+ * @author Klasnov
+ * @see EngineGenerator
+ * @see SyntaxAnalyzer#setEngine(ParserEngine)
+ */
+public interface ParserEngine {
+    /**
+     * @return 生成该引擎时所用分析表的指纹, 与 {@link cn.edu.hitsz.compiler.parser.table.CompiledTable#fingerprint()} 相同时才能使用
+     */
+    long fingerprint();
+
+    /**
+     * 分析词法单元流
+     *
+     * @param tokens 词法单元流, 以 EOF 结尾
+     * @param sink   事件的消费者
+     * @throws RuntimeException 词法单元流不是文法的句子
+     */
+    void parse(TokenBuffer tokens, ParseEventRing.Sink sink);
+}
@@ -0,0 +1,298 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledTable;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Term;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 表达式的优先级爬升分析器, 作为 LR 驱动程序分析表达式时的快速路径
+ * <br>
+ * 文法中的表达式按优先级分层: 第 l 层的非终结符 N_l 只有 {@code N_l -> N_l op N_(l+1)} 与 {@code N_l -> N_(l+1)} 两种产生式,
+ * 最后一层之下是初等式, 即单个终结符或 {@code ( N_1 )}. 优先级文件声明每个运算符所在的层, 加载时会与文法逐一核对.
+ * <br>
+ * 驱动程序进入只能开始一个表达式的状态时, 把整个表达式交给本分析器. 本分析器按运算符的优先级直接决定何时规约, 不再为每次规约查 action 表,
+ * 但仍按分析表求出每个动作之后的状态, 所以通知观察者的移进与规约事件 (包括其中的状态) 与逐步执行 LR 分析时完全相同.
+ * 括号的嵌套层数受线程栈大小的限制.
+ *
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setExpressionFastPath(boolean)
+ */
+public class PrecedenceParser {
+    /**
+     * 分析过程中的动作, 由驱动程序转发给观察者
+     */
+    interface Events {
+        /**
+         * @param state 移进后的状态编号
+         * @param pos   移进的词法单元的位置
+         */
+        void shift(int state, int pos);
+
+        /**
+         * @param state      规约并 goto 后的状态编号
+         * @param production 规约的产生式编号
+         * @param first      产生式体最左端的词法单元的位置
+         */
+        void reduce(int state, int production, int first);
+    }
+
+    private final CompiledTable table;
+    private final int levelCount;
+    /** 以码点 + 1 为下标, 运算符所在的层, 不是运算符时为 0 */
+    private final int[] opLevels;
+    /** 以码点 + 1 为下标, 运算符对应的产生式 {@code N_l -> N_l op N_(l+1)} */
+    private final int[] opProductions;
+    /** 以层为下标, 产生式 {@code N_l -> N_(l+1)} */
+    private final int[] unitProductions;
+    /** 以码点 + 1 为下标, 由单个终结符构成的初等式的产生式, 不是时为 -1 */
+    private final int[] primaryProductions;
+    private final int openCode;
+    private final int closeCode;
+    private final int parenProduction;
+    /** 以状态编号为下标, 该状态是否只能开始一个表达式 */
+    private final boolean[] entries;
+
+    /** 当前分析的词法单元流, 下一个待读取的词法单元的位置与事件的接收者 */
+    private TokenBuffer tokens;
+    private int pos;
+    private Events events;
+
+    /**
+     * 读取优先级文件并与分析表中的文法核对
+     *
+     * @param path  优先级文件路径
+     * @param table 编译后的分析表
+     * @return 优先级爬升分析器
+     * @throws RuntimeException 优先级文件与文法不一致
+     */
+    public static PrecedenceParser load(String path, CompiledTable table) {
+        final var levels = new HashMap<TokenKind, Integer>();
+        for (final var rawLine : FileUtils.readLines(path)) {
+            final var line = rawLine.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final var words = line.split("\\s+");
+            if (words.length != 3) {
+                throw new RuntimeException("Illegal precedence rule: " + line);
+            }
+            if (!words[2].equals("left")) {
+                throw new RuntimeException("Only left-associative operators are supported: " + line);
+            }
+            levels.put(TokenKind.fromString(words[0]), Integer.parseInt(words[1]));
+        }
+        if (levels.isEmpty()) {
+            throw new RuntimeException("No operator in precedence file: " + path);
+        }
+        return new PrecedenceParser(table, levels);
+    }
+
+    private PrecedenceParser(CompiledTable table, Map<TokenKind, Integer> levels) {
+        this.table = table;
+        final var width = table.terminalWidth();
+        final var productions = table.productions();
+        this.levelCount = levels.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        this.opLevels = new int[width];
+        this.opProductions = new int[width];
+        this.unitProductions = new int[levelCount + 1];
+        this.primaryProductions = new int[width];
+        Arrays.fill(primaryProductions, -1);
+
+        // 找出每个运算符的产生式, 同一层的运算符须有相同的头部与右操作数
+        final var heads = new NonTerminal[levelCount + 2];
+        final var operands = new Term[levelCount + 1];
+        for (final var entry : levels.entrySet()) {
+            final var code = entry.getKey().getCode();
+            final var level = entry.getValue();
+            final var production = find(productions, p -> p.body().size() == 3
+                && p.body().get(0).equals(p.head()) && p.body().get(1).equals(entry.getKey()));
+            if (level < 1 || production == null || heads[level] != null && !heads[level].equals(production.head())
+                || operands[level] != null && !operands[level].equals(production.body().get(2))) {
+                throw new RuntimeException("Operator " + entry.getKey() + " does not match grammar");
+            }
+            heads[level] = production.head();
+            operands[level] = production.body().get(2);
+            opLevels[code + 1] = level;
+            opProductions[code + 1] = production.index();
+        }
+        for (int level = 1; level <= levelCount; level++) {
+            if (heads[level] == null || !(operands[level] instanceof NonTerminal next)) {
+                throw new RuntimeException("Operator precedence level " + level + " does not match grammar");
+            }
+            if (level < levelCount && !next.equals(heads[level + 1])) {
+                throw new RuntimeException("Operator precedence in precedence file does not match grammar");
+            }
+            heads[level + 1] = next;
+            final var head = heads[level];
+            final var unit = find(productions, p -> p.head().equals(head) && p.body().equals(List.of(next)));
+            if (unit == null) {
+                throw new RuntimeException("No production " + head + " -> " + next);
+            }
+            unitProductions[level] = unit.index();
+        }
+
+        // 每层的非终结符不能有其它产生式, 初等式只能是单个终结符或括号
+        int open = -2;
+        int close = -2;
+        int paren = -1;
+        for (final var production : productions) {
+            if (production == null || table.listRoles()[production.index()] != CompiledTable.LIST_NONE) {
+                continue;
+            }
+            final var level = Arrays.asList(heads).indexOf(production.head());
+            final var body = production.body();
+            final var isOperator = body.size() == 3 && body.get(1) instanceof TokenKind op
+                && opProductions[op.getCode() + 1] == production.index();
+            if (level >= 1 && level <= levelCount && production.index() != unitProductions[level] && !isOperator) {
+                throw new RuntimeException("Unsupported expression production: " + production);
+            }
+            if (level == levelCount + 1) {
+                if (body.size() == 1 && body.get(0) instanceof TokenKind terminal) {
+                    primaryProductions[terminal.getCode() + 1] = production.index();
+                } else if (body.size() == 3 && body.get(0) instanceof TokenKind left
+                    && body.get(1).equals(heads[1]) && body.get(2) instanceof TokenKind right && paren < 0) {
+                    open = left.getCode();
+                    close = right.getCode();
+                    paren = production.index();
+                } else {
+                    throw new RuntimeException("Unsupported primary production: " + production);
+                }
+            }
+        }
+        this.openCode = open;
+        this.closeCode = close;
+        this.parenProduction = paren;
+
+        // 只能开始一个表达式的状态: 可以 goto 到表达式, 且只能移进初等式开头的终结符
+        final var statusCount = table.statuses().length;
+        this.entries = new boolean[statusCount];
+        for (int state = 0; state < statusCount; state++) {
+            if (table.statuses()[state] == null || table.gotoState(state, unitProductions[1]) < 0) {
+                continue;
+            }
+            var entry = true;
+            for (int column = 0; column < width; column++) {
+                final var kind = CompiledTable.kindOf(table.actions()[state * width + column]);
+                final var startsPrimary = primaryProductions[column] >= 0 || column - 1 == openCode;
+                entry &= kind == CompiledTable.ERROR || kind == CompiledTable.SHIFT && startsPrimary;
+            }
+            entries[state] = entry;
+        }
+    }
+
+    private static Production find(Production[] productions, Predicate<Production> filter) {
+        return Arrays.stream(productions).filter(p -> p != null && filter.test(p)).findFirst().orElse(null);
+    }
+
+    /**
+     * @param state 状态编号
+     * @return 驱动程序在该状态下是否应将表达式交给本分析器
+     */
+    public boolean startsAt(int state) {
+        return entries[state];
+    }
+
+    /**
+     * @param state 表达式之下的状态编号
+     * @return 表达式规约完成后栈顶的状态编号
+     */
+    public int expressionState(int state) {
+        return table.gotoState(state, unitProductions[1]);
+    }
+
+    /**
+     * @return 表达式的非终结符编号
+     */
+    public int expression() {
+        return table.productionHeads()[unitProductions[1]];
+    }
+
+    /**
+     * 分析一个完整的表达式, 遇到不能继续表达式的词法单元时停止, 该词法单元由驱动程序继续处理
+     *
+     * @param tokens 词法单元流
+     * @param pos    表达式第一个词法单元的位置
+     * @param state  表达式之下的状态编号, 须满足 {@link #startsAt(int)}
+     * @param events 事件的接收者
+     * @return 表达式之后的第一个词法单元的位置
+     */
+    int parse(TokenBuffer tokens, int pos, int state, Events events) {
+        this.tokens = tokens;
+        this.pos = pos;
+        this.events = events;
+        level(1, state);
+        this.tokens = null;
+        this.events = null;
+        return this.pos;
+    }
+
+    /**
+     * 分析第 level 层的非终结符, 返回时它已规约完毕并位于状态 below 之上
+     */
+    private void level(int level, int below) {
+        if (level > levelCount) {
+            primary(below);
+            return;
+        }
+        final var first = pos;
+        level(level + 1, below);
+        var top = table.gotoState(below, unitProductions[level]);
+        events.reduce(top, unitProductions[level], first);
+        for (var code = tokens.kindCode(pos); opLevels[code + 1] == level; code = tokens.kindCode(pos)) {
+            level(level + 1, shift(top, code));
+            final var production = opProductions[code + 1];
+            top = table.gotoState(below, production);
+            events.reduce(top, production, first);
+        }
+    }
+
+    private void primary(int below) {
+        final var first = pos;
+        final var code = tokens.kindCode(pos);
+        final int production;
+        if (primaryProductions[code + 1] >= 0) {
+            production = primaryProductions[code + 1];
+            check(shift(below, code));
+        } else if (code == openCode) {
+            production = parenProduction;
+            final var inner = shift(below, code);
+            level(1, inner);
+            if (tokens.kindCode(pos) != closeCode) {
+                throw SyntaxAnalyzer.syntaxError(tokens, pos);
+            }
+            check(shift(expressionState(inner), closeCode));
+        } else {
+            throw SyntaxAnalyzer.syntaxError(tokens, pos);
+        }
+        events.reduce(table.gotoState(below, production), production, first);
+    }
+
+    private int shift(int state, int code) {
+        final var action = table.action(state, code);
+        if (CompiledTable.kindOf(action) != CompiledTable.SHIFT) {
+            throw SyntaxAnalyzer.syntaxError(tokens, pos);
+        }
+        final var target = CompiledTable.operandOf(action);
+        events.shift(target, pos++);
+        return target;
+    }
+
+    /**
+     * LR 分析在初等式移进完毕后会按向前看词法单元规约, 若此时 action 表为错误则在规约之前报错
+     */
+    private void check(int state) {
+        if (CompiledTable.kindOf(table.action(state, tokens.kindCode(pos))) == CompiledTable.ERROR) {
+            throw SyntaxAnalyzer.syntaxError(tokens, pos);
+        }
+    }
+}
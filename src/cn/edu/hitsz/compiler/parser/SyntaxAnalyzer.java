@@ -2,11 +2,15 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -20,10 +24,51 @@ import java.util.*;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private final LinkedList<Character> chrStk = new LinkedList<>();
-    private final LinkedList<Status> sttStk = new LinkedList<>();
-    private LinkedList<Token> tokens;
-    private LRTable lrTable;
+    /** 通过 registerObserver(observer, productions) 注册的观察者所关心的产生式 */
+    private final Map<ActionObserver, Set<Production>> boundProductions = new IdentityHashMap<>();
+    /** 通过 registerReductionObserver 注册的观察者, 移进时不通知 */
+    private final Set<ActionObserver> shiftless = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** 按事件分派的观察者数组, 注册观察者或更换分析表后重新构造 */
+    private ActionObserver[] shiftObservers;
+    private ActionObserver[] acceptObservers;
+    /** 以产生式编号为下标, 关心该产生式的规约的观察者 */
+    private ActionObserver[][] reduceObservers;
+    /** 状态栈, 存放状态编号 */
+    private int[] sttStk = new int[64];
+    /** 字符栈, 终结符存放其词法单元的位置, 非终结符 A 存放 {@code -1 - A 的编号} */
+    private int[] symStk = new int[64];
+    private TokenBuffer tokens;
+    /** 导入的分析表, 经压缩表分析时压缩后即释放 */
+    private CompiledTable table;
+    /** 分析表中的各状态与各产生式, 释放分析表后仍用于通知观察者 */
+    private Status[] statuses;
+    private Production[] productions;
+    /** 是否跟踪源代码位置, 开启时 posStk 与状态栈一一对应, 记录每个文法符号最左端词法单元的起始偏移 */
+    private boolean trackPositions = false;
+    private long[] posStk = new long[64];
+    /** 列表栈, 对于改写为左递归的列表 L, 存放 L 上尚未补发给观察者的列表规约数, 其余为 0 */
+    private int[] lstStk = new int[64];
+    /** 异步通知观察者时事件缓冲区的容量, 为 0 表示在分析线程上同步通知 */
+    private int ringCapacity = 0;
+    /** 预先生成的驱动程序, 为 null 时解释执行分析表 */
+    private ParserEngine engine = null;
+    /** 是否把表达式交给优先级爬升分析器, 开启后在 run 时按需加载 */
+    private boolean expressionFastPath = false;
+    private PrecedenceParser precedence = null;
+    /** 推测并行分析所用的线程池, 为 null 时不并行分析 */
+    private ForkJoinPool parallelPool = null;
+    private int chunkTokens;
+    /** 驱动程序的执行记录, 不跟踪时为只有一步容量, 从不转储的记录 */
+    private ParseTrace trace = ParseTrace.disabled();
+    /** 是否通过压缩后的分析表查表, 压缩表在 run 时按需构造 */
+    private boolean compressTable = false;
+    private boolean defaultReductions = false;
+    private CompressedTable compressed = null;
+    /** 是否在语法错误后恢复并继续分析 */
+    private boolean errorRecovery = false;
+    private final List<SyntaxDiagnostic> diagnostics = new ArrayList<>();
+    /** 错误恢复时用于求同步点 goto 的产生式编号, 其头部为分号之前的非终结符; 为 -1 时尚未求出 */
+    private int recoveryProduction = -1;
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
@@ -36,6 +81,300 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        reduceObservers = null;
+    }
+
+    /**
+     * 注册只关心某些产生式的规约的观察者, 其余产生式的规约不会通知该观察者.
+     * 这将取代观察者自身的 {@link ActionObserver#observesReduce(Production)}, 但 shift 与 accept 事件仍由观察者自身决定是否关心.
+     * @param observer    观察者
+     * @param productions 该观察者关心的产生式
+     */
+    public void registerObserver(ActionObserver observer, Collection<Production> productions) {
+        boundProductions.put(observer, Set.copyOf(productions));
+        registerObserver(observer);
+    }
+
+    /**
+     * 注册只关心规约与接受的观察者, 移进时不会通知该观察者, 驱动程序也不会为其构造 Token 对象.
+     * 这将取代观察者自身的 {@link ActionObserver#observesShift()}, 规约与接受事件仍由观察者自身决定是否关心.
+     * @param observer 观察者
+     */
+    public void registerReductionObserver(ActionObserver observer) {
+        shiftless.add(observer);
+        registerObserver(observer);
+    }
+
+    /**
+     * 按观察者声明关心的事件构造分派数组, 使驱动程序在每个事件上只需遍历关心该事件的观察者
+     */
+    private void buildDispatch() {
+        shiftObservers = observers.stream()
+            .filter(observer -> !shiftless.contains(observer) && observer.observesShift())
+            .toArray(ActionObserver[]::new);
+        acceptObservers = observers.stream().filter(ActionObserver::observesAccept).toArray(ActionObserver[]::new);
+        final var productions = this.productions;
+        reduceObservers = new ActionObserver[productions.length][];
+        for (int idx = 0; idx < productions.length; idx++) {
+            final var production = productions[idx];
+            reduceObservers[idx] = production == null ? new ActionObserver[0] : observers.stream()
+                .filter(observer -> boundProductions.containsKey(observer)
+                    ? boundProductions.get(observer).contains(production)
+                    : observer.observesReduce(production))
+                .toArray(ActionObserver[]::new);
+        }
+    }
+
+    /**
+     * 设置是否跟踪源代码位置. 开启后, 驱动程序会在通知各观察者之前通过 {@link ActionObserver#atPosition(long)}
+     * 告知当前动作对应的源代码起始偏移. 默认关闭, 关闭时分析过程中不会维护任何位置信息.
+     *
+     * @param trackPositions 是否跟踪源代码位置
+     */
+    public void setTrackPositions(boolean trackPositions) {
+        this.trackPositions = trackPositions;
+    }
+
+    /**
+     * 设置是否异步通知观察者. 开启后, 驱动程序只把每个动作以三个 int 的形式写入一个环形缓冲区,
+     * 每个观察者在自己的线程上按顺序读取这些事件并执行回调, 与语法分析及其它观察者并发进行.
+     * 缓冲区已满时驱动程序会等待最慢的观察者. run 方法会等到所有观察者都处理完全部事件后才返回.
+     * <br>
+     * 开启后各观察者的回调将在不同的线程上执行, 所以观察者之间不能共享可变的状态; 位置跟踪的 atPosition 回调也不会被调用.
+     *
+     * @param ringCapacity 缓冲区可容纳的事件数, 为 0 时关闭异步通知 (默认)
+     * @see ParseEventRing
+     */
+    public void setAsyncObservers(int ringCapacity) {
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * 设置是否使用表达式快速路径. 开启后, 驱动程序进入只能开始一个表达式的状态时, 会把整个表达式交给按
+     * {@link FilePathConfig#PRECEDENCE_PATH} 中的运算符优先级工作的 {@link PrecedenceParser}, 观察者收到的事件不变.
+     * 使用预先生成的驱动程序时不会走快速路径.
+     *
+     * @param expressionFastPath 是否使用表达式快速路径, 默认关闭
+     */
+    public void setExpressionFastPath(boolean expressionFastPath) {
+        this.expressionFastPath = expressionFastPath;
+    }
+
+    /**
+     * 设置是否以语句为单位推测并行地分析. 开启后, 词法单元流按分号切分为约 chunkTokens 个词法单元一块, 各块在线程池中并行分析,
+     * 再按源代码顺序拼接; 推测失败的语句会在拼接时顺序地重新分析. 观察者收到的事件及其顺序与顺序分析相同, 回调仍在调用 run 的线程上执行
+     * (开启异步通知时则在各观察者的线程上执行).
+     * <br>
+     * 并行分析时不跟踪源代码位置, 也不使用表达式快速路径. 使用预先生成的驱动程序时不会并行分析.
+     *
+     * @param pool        线程池, 为 null 时关闭并行分析 (默认)
+     * @param chunkTokens 每块大约包含的词法单元数
+     * @see ParallelParser
+     */
+    public void setParallelParsing(ForkJoinPool pool, int chunkTokens) {
+        this.parallelPool = pool;
+        this.chunkTokens = chunkTokens;
+    }
+
+    /**
+     * 设置是否记录驱动程序的执行过程. 开启后, 解释执行分析表时每次移进, 规约 (连同随后的 goto), 接受与出错都会写入一个只保留最近 capacity 步的环形数组,
+     * 并统计栈的最大深度与每秒的规约数. 分析失败时, run 方法会在抛出异常之前把记录转储到 {@link FilePathConfig#PARSER_TRACE_PATH};
+     * 也可以随时通过 {@link #dumpTrace(String)} 转储.
+     * <br>
+     * 改写后的列表按驱动程序实际执行的规约记录, 不记录补发给观察者的规约. 表达式快速路径中的步骤不计入栈深度, 其规约记录的词法单元为产生式体最左端的词法单元.
+     * 使用预先生成的驱动程序或并行分析时不记录. 关闭时几乎没有开销; 开启后每一步要多写三个 int, 解释执行的耗时约增加四分之一.
+     *
+     * @param capacity 保留的步数, 向上取为 2 的幂; 为 0 时关闭记录 (默认)
+     * @see ParseTrace
+     */
+    public void setTraceCapacity(int capacity) {
+        this.trace = capacity > 0 ? new ParseTrace(capacity) : ParseTrace.disabled();
+    }
+
+    /**
+     * 将最近一次分析的执行记录写入文件
+     *
+     * @param path 文件路径
+     */
+    public void dumpTrace(String path) {
+        if (!trace.isEnabled()) {
+            throw new RuntimeException("Parse trace is not enabled");
+        }
+        FileUtils.writeLines(path, trace.lines(productions, tokens));
+    }
+
+    /**
+     * 设置是否在语法错误后恢复并继续分析. 开启后, 遇到语法错误时驱动程序记录出错的词法单元与出错状态下可以接受的词法单元,
+     * 然后按紧急模式恢复: 弹栈直到某个状态可以 goto 到文法中分号之前的非终结符 (即语句), 压入该非终结符,
+     * 再跳过输入直到一个在新栈顶状态下可以继续分析的词法单元 (通常就是下一个分号). 分析结束后, 若有语法错误,
+     * run 方法抛出包含全部错误的异常, 并且不通知观察者 accept; 各错误也可以通过 {@link #getSyntaxErrors()} 取得.
+     * <br>
+     * 错误恢复只在解释执行分析表时进行, 所以开启后 run 方法不会使用预先生成的驱动程序, 并行分析与表达式快速路径.
+     * 出错之前观察者已经收到的事件不会撤回, 有错误时观察者的结果没有意义. 没有语法错误时观察者收到的事件与关闭时完全相同.
+     *
+     * @param errorRecovery 是否恢复, 默认关闭, 关闭时遇到第一个语法错误即抛出异常
+     * @see SyntaxDiagnostic
+     */
+    public void setErrorRecovery(boolean errorRecovery) {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * 设置是否通过压缩后的分析表查表. 开启后, run 方法在首次分析时按 {@link CompressedTable#compress(CompiledTable, boolean)}
+     * 压缩已导入的分析表, 之后由 {@link CompressedParser} 经压缩表查表分析, 观察者收到的事件与解释执行时相同.
+     * 压缩后驱动程序不再持有稠密的分析表; 此后若要关闭压缩表, 改变默认规约的设置, 开启错误恢复或使用预先生成的驱动程序, 需要重新导入分析表.
+     * 压缩结果的核对见 {@link CompressedTableVerifier}.
+     * <br>
+     * 经压缩表分析时不跟踪源代码位置, 不消除单产生式, 也不使用表达式快速路径与执行记录. 错误恢复与预先生成的驱动程序优先于压缩表;
+     * 开启默认规约时, 出错之前观察者可能多收到若干次规约.
+     *
+     * @param compressTable     是否通过压缩表查表, 默认关闭
+     * @param defaultReductions 压缩时是否为每个状态选出默认规约
+     * @see CompressedTable
+     */
+    public void setCompressedTable(boolean compressTable, boolean defaultReductions) {
+        this.compressTable = compressTable;
+        if (this.defaultReductions != defaultReductions) {
+            this.defaultReductions = defaultReductions;
+            compressed = null;
+        }
+    }
+
+    /**
+     * @return 最近一次分析中收集的语法错误, 按源代码顺序排列
+     */
+    public List<SyntaxDiagnostic> getSyntaxErrors() {
+        return List.copyOf(diagnostics);
+    }
+
+    /**
+     * 将表达式快速路径中的动作按与 LR 驱动程序相同的方式转发给观察者. 没有观察者关心的规约不会写入缓冲区, 也不会通知位置
+     */
+    private final class ExpressionEvents implements PrecedenceParser.Events {
+        private final ParseEventRing ring;
+
+        private ExpressionEvents(ParseEventRing ring) {
+            this.ring = ring;
+        }
+
+        @Override
+        public void shift(int state, int pos) {
+            trace.shift(state, pos, 0);
+            if (ring != null) {
+                ring.publish(CompiledTable.SHIFT, state, pos);
+                return;
+            }
+            if (trackPositions) {
+                callAtPosition(tokens.start(pos));
+            }
+            if (shiftObservers.length != 0) {
+                final var status = statuses[state];
+                final var token = tokens.get(pos);
+                for (final var listener : shiftObservers) {
+                    listener.whenShift(status, token);
+                }
+            }
+        }
+
+        @Override
+        public void reduce(int state, int production, int first) {
+            trace.reduce(state, production, first);
+            if (reduceObservers[production].length == 0) {
+                return;
+            }
+            if (ring != null) {
+                ring.publish(CompiledTable.REDUCE, state, production);
+                return;
+            }
+            if (trackPositions) {
+                callAtPosition(tokens.start(first));
+            }
+            final var status = statuses[state];
+            final var p = productions[production];
+            for (final var listener : reduceObservers[production]) {
+                listener.whenReduce(status, p);
+            }
+        }
+    }
+
+    /**
+     * 使用预先生成的驱动程序代替解释执行分析表. 引擎必须由与已导入的分析表相同的分析表生成, 否则 run 方法会抛出异常.
+     * 引擎不跟踪源代码位置, 也不消除单产生式, 观察者收到的事件与解释执行时相同.
+     *
+     * @param engine 由 EngineGenerator 生成的驱动程序, 为 null 时恢复为解释执行 (默认)
+     * @see EngineGenerator
+     */
+    public void setEngine(ParserEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * 创建在分析线程上按分派数组同步通知观察者的事件消费者, 供预先生成的驱动程序使用
+     */
+    private ParseEventRing.Sink dispatchSink() {
+        final var statuses = this.statuses;
+        final var productions = this.productions;
+        return (kind, state, operand) -> {
+            switch (kind) {
+                case CompiledTable.SHIFT -> {
+                    if (shiftObservers.length != 0) {
+                        callWhenInShift(statuses[state], tokens.get(operand));
+                    }
+                }
+                case CompiledTable.REDUCE -> callWhenInReduce(statuses[state], productions[operand]);
+                case CompiledTable.ACCEPT -> callWhenInAccept(statuses[state]);
+                default -> throw new RuntimeException("Illegal parse event: " + kind);
+            }
+        };
+    }
+
+    /**
+     * 为每个观察者创建一个事件消费者, 按与同步通知相同的分派规则执行回调, 并启动缓冲区
+     */
+    private ParseEventRing startRing() {
+        final var ring = new ParseEventRing(ringCapacity);
+        final var statuses = this.statuses;
+        final var productions = this.productions;
+        for (final var observer : observers) {
+            final var shifts = Arrays.asList(shiftObservers).contains(observer);
+            final var accepts = Arrays.asList(acceptObservers).contains(observer);
+            final var reduces = new boolean[productions.length];
+            for (int idx = 0; idx < productions.length; idx++) {
+                reduces[idx] = Arrays.asList(reduceObservers[idx]).contains(observer);
+            }
+            ring.addSink((kind, state, operand) -> {
+                switch (kind) {
+                    case CompiledTable.SHIFT -> {
+                        if (shifts) {
+                            observer.whenShift(statuses[state], tokens.get(operand));
+                        }
+                    }
+                    case CompiledTable.REDUCE -> {
+                        if (reduces[operand]) {
+                            observer.whenReduce(statuses[state], productions[operand]);
+                        }
+                    }
+                    case CompiledTable.ACCEPT -> {
+                        if (accepts) {
+                            observer.whenAccept(statuses[state]);
+                        }
+                    }
+                    default -> throw new RuntimeException("Illegal parse event: " + kind);
+                }
+            });
+        }
+        ring.start();
+        return ring;
+    }
+
+    /**
+     * 将源代码位置通知各个观察者
+     * @param offset 起始偏移
+     */
+    private void callAtPosition(long offset) {
+        for (final var listener : observers) {
+            listener.atPosition(offset);
+        }
     }
 
     /**
@@ -44,7 +383,10 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
+        if (reduceObservers == null) {
+            buildDispatch();
+        }
+        for (final var listener : shiftObservers) {
             listener.whenShift(currentStatus, currentToken);
         }
     }
@@ -55,7 +397,10 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
+        if (reduceObservers == null) {
+            buildDispatch();
+        }
+        for (final var listener : reduceObservers[production.index()]) {
             listener.whenReduce(currentStatus, production);
         }
     }
@@ -65,7 +410,10 @@ public class SyntaxAnalyzer {
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
+        if (reduceObservers == null) {
+            buildDispatch();
+        }
+        for (final var listener : acceptObservers) {
             listener.whenAccept(currentStatus);
         }
     }
@@ -74,67 +422,400 @@ public class SyntaxAnalyzer {
      * 初始化状态栈，记录词法分析后的字符串
      * @param tokens 词法分析后的字符串
      */
-    public void loadTokens(LinkedList<Token> tokens) {
+    public void loadTokens(TokenBuffer tokens) {
         this.tokens = tokens;
     }
 
     /**
-     * 导入LR(1)分析表
+     * 导入LR(1)分析表, 并将其编译为数组形式, 分析过程中只在数组上查表
      * @param table 已经完成的LR(1)分析表
      */
     public void loadLRTable(LRTable table) {
-        this.lrTable = table;
+        loadCompiledTable(CompiledTable.compile(table));
+    }
+
+    /**
+     * 导入已经编译好的分析表, 例如由 {@link TableGenerator#getCompiledTable(boolean)} 得到的消除了单产生式的分析表
+     * @param table 编译后的分析表
+     */
+    public void loadCompiledTable(CompiledTable table) {
+        this.table = table;
+        this.statuses = table.statuses();
+        this.productions = table.productions();
+        reduceObservers = null;
+        precedence = null;
+        compressed = null;
+        recoveryProduction = -1;
     }
 
     /**
      * 运行语法分析程序
+     * <br>
+     * 三个栈共用同一个栈顶下标, 规约时一次性弹出产生式体长度个元素. 只有在通知观察者时才会取出 Status 与 Token 对象,
+     * 其中 Status 对象是预先构造好的, 只带文本的 Token 才需要在移进时新建.
+     * <br>
+     * 观察者按事件分派: 每次移进只通知关心移进的观察者, 每次规约只通知关心该产生式的观察者, 没有观察者关心的事件不会构造任何对象.
+     * 开启异步通知时, 驱动程序只向缓冲区写入事件, 回调由各观察者的线程执行.
+     * <br>
+     * 若分析表消除了单产生式, 每次规约之后紧接着的单产生式规约链会一步完成, 不再逐个弹栈查表.
      */
     public void run() {
+        if (reduceObservers == null) {
+            buildDispatch();
+        }
+        if (table == null && (errorRecovery || engine != null || !compressTable || compressed == null)) {
+            throw new RuntimeException("The LR table was released after compression, load it again before parsing without it");
+        }
+        if (engine != null && engine.fingerprint() != table.fingerprint()) {
+            throw new RuntimeException("Parser engine was generated from a different LR table, run EngineGenerator again");
+        }
+        final var ring = ringCapacity > 0 ? startRing() : null;
+        final var notifyShift = ring == null && shiftObservers.length != 0;
+        final var reduceObservers = ring == null ? this.reduceObservers : null;
+        trace.start();
+        diagnostics.clear();
+        RuntimeException failure = null;
+        try {
+            if (errorRecovery) {
+                parse(ring, notifyShift, reduceObservers, null);
+                if (!diagnostics.isEmpty()) {
+                    throw new RuntimeException("Syntax analysis failed with %d syntax error(s)!%n%s".formatted(diagnostics.size(),
+                        String.join(System.lineSeparator(), diagnostics.stream().map(Object::toString).toList())));
+                }
+            } else if (engine != null) {
+                engine.parse(tokens, ring != null ? ring::publish : dispatchSink());
+            } else if (compressTable) {
+                if (compressed == null) {
+                    compressed = CompressedTable.compress(table, defaultReductions);
+                    table = null;
+                }
+                new CompressedParser(compressed, tokens, ring != null ? ring::publish : dispatchSink()).parse();
+            } else if (parallelPool != null) {
+                new ParallelParser(table, tokens, ring != null ? ring::publish : dispatchSink()).parse(parallelPool, chunkTokens);
+            } else {
+                if (expressionFastPath && precedence == null) {
+                    precedence = PrecedenceParser.load(FilePathConfig.PRECEDENCE_PATH, table);
+                }
+                parse(ring, notifyShift, reduceObservers, expressionFastPath ? new ExpressionEvents(ring) : null);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            trace.stop();
+            if (trace.isEnabled()) {
+                dumpTrace(FilePathConfig.PARSER_TRACE_PATH);
+            }
+            throw e;
+        } finally {
+            if (ring != null) {
+                try {
+                    ring.finish();
+                } catch (RuntimeException e) {
+                    // 观察者的异常不能掩盖已经抛出的语法错误
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        trace.stop();
+    }
+
+    /**
+     * 解释执行分析表. 跟踪与不跟踪使用同一份循环, 每一步的记录由循环开始前求出的 tracing 决定是否执行.
+     * 即使不判断, 写入从不转储的记录也要多花三成左右的时间, 而这个判断总能被正确预测, 不跟踪时几乎没有开销
+     */
+    private void parse(ParseEventRing ring, boolean notifyShift, ActionObserver[][] reduceObservers,
+                       PrecedenceParser.Events expressionEvents) {
+        final var eofCode = TokenKind.eof().getCode();
+        final var statuses = this.statuses;
+        final var productionLengths = table.productionLengths();
+        final var productionHeads = table.productionHeads();
+        final var listRoles = table.listRoles();
+        // 执行记录的统计数据放在局部变量中, 离开循环时写回
+        final var trace = this.trace;
+        final var tracing = trace.isEnabled();
+        final var steps = trace.steps();
+        final var mask = trace.mask();
+        long step = trace.total();
+        long reductions = trace.reductions();
+        int maxDepth = trace.maxDepth();
         boolean acc = false;
-        Action action;
-        // 初始化状态栈和字符栈
-        chrStk.addFirst(new Character(Token.eof()));
-        sttStk.addFirst(lrTable.getInit());
-        // 读取输入字符串的内容
-        while (!tokens.isEmpty()) {
-            action = lrTable.getAction(sttStk.getFirst(), tokens.getFirst());
-            // 根据LR(1)分析表内容进行移进规约
-            switch (action.getKind()) {
-                // 进行移进
-                case Shift -> {
+        // 下一个待读取的词法单元的位置
+        int pos = 0;
+        // 最近一次错误恢复后的位置
+        int recovered = -1;
+        // 初始化状态栈和字符栈, 栈底的字符为 EOF
+        int top = 0;
+        sttStk[top] = table.initState();
+        symStk[top] = tokens.size() - 1;
+        lstStk[top] = 0;
+        try {
+            // 读取输入字符串的内容
+            while (pos < tokens.size()) {
+                // 表达式交给优先级爬升分析器, 返回时表达式已规约完毕
+                if (expressionEvents != null && precedence.startsAt(sttStk[top])) {
+                    final var below = sttStk[top];
+                    final var first = pos;
+                    trace.update(step, reductions, maxDepth);
+                    pos = precedence.parse(tokens, pos, below, expressionEvents);
+                    step = trace.total();
+                    reductions = trace.reductions();
+                    if (++top == sttStk.length) {
+                        grow();
+                    }
+                    sttStk[top] = precedence.expressionState(below);
+                    symStk[top] = -1 - precedence.expression();
+                    lstStk[top] = 0;
+                    posStk[top] = trackPositions && ring == null ? tokens.start(first) : -1;
                     acc = false;
-                    chrStk.addFirst(new Character(tokens.removeFirst()));
-                    sttStk.addFirst(action.getStatus());
-                    callWhenInShift(sttStk.getFirst(), chrStk.getFirst().getTkn());
+                    continue;
                 }
-                // 进行规约
-                case Reduce -> {
-                    acc = false;
-                    Production p = action.getProduction();
-                    for (int i = 0; i < p.body().size(); i++) {
-                        chrStk.removeFirst();
-                        sttStk.removeFirst();
-                    }
-                    chrStk.addFirst(new Character(p.head()));
-                    sttStk.addFirst(lrTable.getGoto(sttStk.getFirst(), p.head()));
-                    callWhenInReduce(sttStk.getFirst(), p);
+                final var code = tokens.kindCode(pos);
+                final var action = table.action(sttStk[top], code);
+                // 栈顶的列表不会再增长时, 按原文法的顺序补发推迟的列表规约
+                if (lstStk[top] > 0 && (CompiledTable.kindOf(action) != CompiledTable.SHIFT
+                        || !table.continuesList(-1 - symStk[top], code))) {
+                    flushList(top, ring, reduceObservers);
                 }
-                // 完成识别
-                case Accept -> {
-                    if (tokens.getFirst().getKind() == TokenKind.eof()) {
-                        tokens.removeFirst();
-                        acc = true;
+                // 根据LR(1)分析表内容进行移进规约
+                switch (CompiledTable.kindOf(action)) {
+                    // 进行移进
+                    case CompiledTable.SHIFT -> {
+                        acc = false;
+                        if (++top == sttStk.length) {
+                            grow();
+                        }
+                        sttStk[top] = CompiledTable.operandOf(action);
+                        symStk[top] = pos;
+                        lstStk[top] = 0;
+                        if (tracing) {
+                            ParseTrace.put(steps, (int) step++ & mask, CompiledTable.SHIFT, sttStk[top], pos);
+                            maxDepth = Math.max(maxDepth, top);
+                        }
+                        if (trackPositions && ring == null) {
+                            posStk[top] = tokens.start(pos);
+                            callAtPosition(posStk[top]);
+                        }
+                        if (ring != null) {
+                            ring.publish(CompiledTable.SHIFT, sttStk[top], pos);
+                        } else if (notifyShift) {
+                            final var status = statuses[sttStk[top]];
+                            final var token = tokens.get(pos);
+                            for (final var listener : shiftObservers) {
+                                listener.whenShift(status, token);
+                            }
+                        }
+                        pos++;
+                    }
+                    // 进行规约
+                    case CompiledTable.REDUCE -> {
+                        acc = false;
+                        final var index = CompiledTable.operandOf(action);
+                        final var length = productionLengths[index];
+                        // 改写后的列表的规约只计数, 不通知观察者
+                        final var pending = switch (listRoles[index]) {
+                            case CompiledTable.LIST_BASE -> 1;
+                            case CompiledTable.LIST_APPEND -> lstStk[top - length + 1] + 1;
+                            default -> 0;
+                        };
+                        // 空产生式需要压入一个新元素, 其位置取向前看词法单元的位置
+                        final var offset = !trackPositions || ring != null ? -1 : length == 0 ? tokens.start(pos) : posStk[top - length + 1];
+                        top -= length;
+                        final var chain = pending == 0 ? table.chainOf(sttStk[top], productionHeads[index], code) : 0;
+                        final var target = table.gotoState(sttStk[top], index);
+                        if (++top == sttStk.length) {
+                            grow();
+                        }
+                        sttStk[top] = target;
+                        symStk[top] = -1 - productionHeads[index];
+                        lstStk[top] = pending;
+                        posStk[top] = offset;
+                        if (tracing) {
+                            ParseTrace.put(steps, (int) step++ & mask, ParseTrace.reduceKind(index), target, pos);
+                            reductions++;
+                        }
+                        if (pending == 0) {
+                            callWhenReduced(top, index, ring, reduceObservers);
+                        }
+                        if (chain != 0) {
+                            final var units = table.chains()[chain];
+                            elideChain(top, units, ring, reduceObservers);
+                            if (tracing) {
+                                for (int idx = 0; idx < units.length; idx += 2) {
+                                    ParseTrace.put(steps, (int) step++ & mask, ParseTrace.reduceKind(units[idx]), units[idx + 1], pos);
+                                }
+                                reductions += units.length / 2;
+                            }
+                        }
+                    }
+                    // 完成识别
+                    case CompiledTable.ACCEPT -> {
+                        if (code == eofCode) {
+                            if (tracing) {
+                                ParseTrace.put(steps, (int) step++ & mask, CompiledTable.ACCEPT, sttStk[top], pos);
+                            }
+                            pos++;
+                            acc = true;
+                        }
+                    }
+                    // 非法句型
+                    default -> {
+                        if (tracing) {
+                            ParseTrace.put(steps, (int) step++ & mask, CompiledTable.ERROR, sttStk[top], pos);
+                        }
+                        if (!errorRecovery) {
+                            throw syntaxError(tokens, pos);
+                        }
+                        // 恢复后在同一位置再次出错时不重复报告, 并至少跳过一个词法单元以保证分析能够结束
+                        final var again = pos == recovered;
+                        if (!again) {
+                            diagnostics.add(diagnose(sttStk[top], pos));
+                        }
+                        top = resynchronize(top, pos);
+                        if (again) {
+                            pos++;
+                        }
+                        // 跳过不能在同步后的状态下继续分析的词法单元, 输入耗尽时结束分析
+                        while (pos < tokens.size() - 1
+                                && CompiledTable.kindOf(table.action(sttStk[top], tokens.kindCode(pos))) == CompiledTable.ERROR) {
+                            pos++;
+                        }
+                        if (pos == tokens.size()
+                                || CompiledTable.kindOf(table.action(sttStk[top], tokens.kindCode(pos))) == CompiledTable.ERROR) {
+                            pos = tokens.size();
+                        }
+                        recovered = pos;
                     }
                 }
-                // 非法句型
-                default -> {
-                    throw new RuntimeException("Syntax analysis failed! " +
-                            "It is not a sentence pattern corresponding to grammar.");
+            }
+        } finally {
+            trace.update(step, reductions, maxDepth);
+        }
+        if (!diagnostics.isEmpty()) {
+            return;
+        }
+        if (acc && ring != null) {
+            ring.publish(CompiledTable.ACCEPT, sttStk[top], 0);
+        } else if (acc) {
+            callWhenInAccept(statuses[sttStk[top]]);
+        }
+    }
+
+    /**
+     * 将一次规约通知给观察者, 栈顶为规约得到的非终结符
+     */
+    private void callWhenReduced(int top, int production, ParseEventRing ring, ActionObserver[][] reduceObservers) {
+        if (ring != null) {
+            ring.publish(CompiledTable.REDUCE, sttStk[top], production);
+            return;
+        }
+        if (trackPositions) {
+            callAtPosition(posStk[top]);
+        }
+        final var status = statuses[sttStk[top]];
+        final var p = productions[production];
+        for (final var listener : reduceObservers[production]) {
+            listener.whenReduce(status, p);
+        }
+    }
+
+    /**
+     * 沿单产生式的规约链直接把栈顶换成链末的非终结符与状态, 链上的产生式只通知关心它们的观察者
+     */
+    private void elideChain(int top, int[] chain, ParseEventRing ring, ActionObserver[][] reduceObservers) {
+        for (int idx = 0; idx < chain.length; idx += 2) {
+            final var unit = chain[idx];
+            sttStk[top] = chain[idx + 1];
+            symStk[top] = -1 - table.productionHeads()[unit];
+            if (this.reduceObservers[unit].length != 0) {
+                callWhenReduced(top, unit, ring, reduceObservers);
+            }
+        }
+    }
+
+    /**
+     * 补发栈顶列表推迟的规约: 原文法先规约最后一个元素得到 {@code L -> alpha}, 再对其余每个元素规约 {@code L -> alpha L}
+     */
+    private void flushList(int top, ParseEventRing ring, ActionObserver[][] reduceObservers) {
+        final var list = -1 - symStk[top];
+        callWhenReduced(top, table.listBases()[list], ring, reduceObservers);
+        for (int count = lstStk[top] - 1; count > 0; count--) {
+            callWhenReduced(top, table.listRecursions()[list], ring, reduceObservers);
+        }
+        lstStk[top] = 0;
+    }
+
+    /**
+     * 记录一处语法错误, 其可接受的词法单元即 action 表中该状态一行里不为错误的列
+     */
+    private SyntaxDiagnostic diagnose(int state, int pos) {
+        final var expected = new ArrayList<TokenKind>();
+        final var width = table.terminalWidth();
+        for (int column = 0; column < width; column++) {
+            if (CompiledTable.kindOf(table.actions()[state * width + column]) != CompiledTable.ERROR) {
+                expected.add(TokenKind.fromCode(column - 1));
+            }
+        }
+        return new SyntaxDiagnostic(pos, tokens.positions().describe(tokens.start(pos)), tokens.kind(pos), expected);
+    }
+
+    /**
+     * 紧急模式恢复: 弹栈直到某个状态可以 goto 到分号之前的非终结符, 再压入该非终结符, 假装它已经规约完毕
+     *
+     * @return 新的栈顶下标
+     * @throws RuntimeException 文法中没有这样的非终结符, 或栈中没有这样的状态
+     */
+    private int resynchronize(int top, int pos) {
+        if (recoveryProduction < 0) {
+            final var separator = TokenKind.fromString("Semicolon");
+            final var productions = this.productions;
+            for (int idx = 0; idx < productions.length && recoveryProduction < 0; idx++) {
+                final var body = productions[idx] == null ? List.<Term>of() : productions[idx].body();
+                for (int at = 1; at < body.size(); at++) {
+                    if (body.get(at).equals(separator) && body.get(at - 1) instanceof NonTerminal statement) {
+                        recoveryProduction = Arrays.stream(productions)
+                            .filter(p -> p != null && p.head().equals(statement))
+                            .findFirst().orElseThrow().index();
+                        break;
+                    }
                 }
             }
+            if (recoveryProduction < 0) {
+                throw new RuntimeException("Grammar has no statement separator to recover at");
+            }
+        }
+        while (top >= 0 && table.gotoState(sttStk[top], recoveryProduction) < 0) {
+            top--;
         }
-        if (acc) {
-            callWhenInAccept(sttStk.getFirst());
+        if (top < 0) {
+            throw syntaxError(tokens, pos);
         }
+        if (top + 1 == sttStk.length) {
+            grow();
+        }
+        sttStk[top + 1] = table.gotoState(sttStk[top], recoveryProduction);
+        symStk[top + 1] = -1 - table.productionHeads()[recoveryProduction];
+        lstStk[top + 1] = 0;
+        posStk[top + 1] = -1;
+        return top + 1;
+    }
+
+    /**
+     * @param tokens 词法单元流
+     * @param pos    无法继续分析的词法单元的位置
+     * @return 语法错误, 其中带有该词法单元在源代码中的行列号
+     */
+    static RuntimeException syntaxError(TokenBuffer tokens, int pos) {
+        return new RuntimeException("Syntax analysis failed at %s! ".formatted(
+                tokens.positions().describe(tokens.start(pos))) +
+                "It is not a sentence pattern corresponding to grammar.");
+    }
+
+    private void grow() {
+        sttStk = Arrays.copyOf(sttStk, sttStk.length * 2);
+        symStk = Arrays.copyOf(symStk, symStk.length * 2);
+        posStk = Arrays.copyOf(posStk, posStk.length * 2);
+        lstStk = Arrays.copyOf(lstStk, lstStk.length * 2);
     }
 }
@@ -0,0 +1,24 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 错误恢复时收集的一处语法错误
+ *
+ * @param tokenIndex 无法继续分析的词法单元的位置
+ * @param position   该词法单元在源代码中的行列号
+ * @param found      该词法单元的类型
+ * @param expected   出错的状态下可以接受的词法单元类型
+ * @author Klasnov
+ * @see SyntaxAnalyzer#setErrorRecovery(boolean)
+ */
+public record SyntaxDiagnostic(int tokenIndex, String position, TokenKind found, List<TokenKind> expected) {
+    @Override
+    public String toString() {
+        return "Syntax error at %s: unexpected %s, expected one of: %s".formatted(position, found.getIdentifier(),
+            expected.stream().map(TokenKind::getIdentifier).collect(Collectors.joining(" ")));
+    }
+}
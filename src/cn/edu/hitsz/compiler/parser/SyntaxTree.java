@@ -0,0 +1,198 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.Arrays;
+
+/**
+ * 以数组存放的语法树, 由 {@link SyntaxTreeBuilder} 构造
+ * <br>
+ * 每个节点只是一个 int 编号, 节点的信息按编号存放在几个 int 数组中: 节点类型, 第一个子节点, 下一个兄弟节点与词法单元的位置.
+ * 叶子节点对应一个移进的词法单元, 类型为词法单元类型的码点; 内部节点对应一次规约, 类型为产生式的编号, 其子节点按产生式体的顺序排列.
+ * 每个节点只占 4 个 int, 遍历时也无需构造任何对象, 所以同一棵树可以反复遍历, 供多遍的分析使用.
+ *
+ * @author Klasnov
+ * @see Cursor
+ */
+public class SyntaxTree {
+    /** 表示不存在的节点 */
+    public static final int NONE = -1;
+
+    private final int[] kinds;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] tokenIndices;
+    private final Production[] productions;
+    private final int root;
+
+    SyntaxTree(int[] kinds, int[] firstChildren, int[] nextSiblings, int[] tokenIndices,
+               Production[] productions, int root) {
+        this.kinds = kinds;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.tokenIndices = tokenIndices;
+        this.productions = productions;
+        this.root = root;
+    }
+
+    /**
+     * @return 根节点, 对应起始产生式
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * @return 节点总数, 节点的编号为 [0, size)
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * @param node 节点
+     * @return 是否为词法单元对应的叶子节点
+     */
+    public boolean isToken(int node) {
+        return tokenIndices[node] != NONE;
+    }
+
+    /**
+     * @param node 节点
+     * @return 叶子节点为词法单元类型的码点, 内部节点为产生式的编号
+     */
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    /**
+     * @param node 叶子节点
+     * @return 该词法单元在词法单元流中的位置, 可以由此在 TokenBuffer 中取得其文本等信息; 内部节点为 NONE
+     */
+    public int tokenIndex(int node) {
+        return tokenIndices[node];
+    }
+
+    /**
+     * @param node 内部节点
+     * @return 该节点规约所用的产生式
+     */
+    public Production production(int node) {
+        return productions[kinds[node]];
+    }
+
+    /**
+     * @return 第一个子节点, 没有时为 NONE
+     */
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return 下一个兄弟节点, 没有时为 NONE
+     */
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @return 一个位于根节点的游标
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 在树上移动的游标, 记录从根节点到当前节点的路径, 所以可以回到父节点. 移动时不构造任何对象, 路径只在树变深时扩容
+     */
+    public class Cursor {
+        private int[] path = new int[32];
+        private int depth = 0;
+
+        private Cursor() {
+            path[0] = root;
+        }
+
+        /**
+         * @return 当前节点
+         */
+        public int node() {
+            return path[depth];
+        }
+
+        /**
+         * @return 当前节点的深度, 根节点为 0
+         */
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * 移动到第一个子节点
+         *
+         * @return 是否有子节点, 没有时不移动
+         */
+        public boolean gotoFirstChild() {
+            final var child = firstChildren[path[depth]];
+            if (child == NONE) {
+                return false;
+            }
+            if (++depth == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[depth] = child;
+            return true;
+        }
+
+        /**
+         * 移动到下一个兄弟节点
+         *
+         * @return 是否有下一个兄弟节点, 没有时不移动
+         */
+        public boolean gotoNextSibling() {
+            final var sibling = nextSiblings[path[depth]];
+            if (depth == 0 || sibling == NONE) {
+                return false;
+            }
+            path[depth] = sibling;
+            return true;
+        }
+
+        /**
+         * 移动到父节点
+         *
+         * @return 是否有父节点, 位于根节点时不移动
+         */
+        public boolean gotoParent() {
+            if (depth == 0) {
+                return false;
+            }
+            depth--;
+            return true;
+        }
+
+        /**
+         * 按先序移动到下一个节点, 即第一个子节点, 或自身及祖先的第一个下一个兄弟节点
+         *
+         * @return 是否还有下一个节点, 已遍历完整棵树时回到根节点并返回 false
+         */
+        public boolean gotoNext() {
+            if (gotoFirstChild()) {
+                return true;
+            }
+            while (!gotoNextSibling()) {
+                if (!gotoParent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 回到根节点
+         */
+        public void reset() {
+            depth = 0;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.Arrays;
+
+/**
+ * 在语法分析过程中构造 {@link SyntaxTree} 的观察者
+ * <br>
+ * 节点按创建的顺序编号, 各数组按需倍增. 移进时创建叶子节点, 词法单元的位置即移进的次数; 规约时从节点栈中弹出产生式体长度个节点作为子节点,
+ * 并依次以 nextSibling 串起来. 接受时再按起始产生式创建根节点. 构造过程中只分配数组, 不为节点构造对象.
+ *
+ * @author Klasnov
+ * @see SyntaxTree
+ */
+public class SyntaxTreeBuilder implements ActionObserver {
+    public SyntaxTreeBuilder(Production beginProduction) {
+        this.beginProduction = beginProduction;
+    }
+
+    private final Production beginProduction;
+    private int[] kinds = new int[256];
+    private int[] firstChildren = new int[256];
+    private int[] nextSiblings = new int[256];
+    private int[] tokenIndices = new int[256];
+    private int nodeCount = 0;
+    /** 以产生式编号为下标, 规约过的产生式 */
+    private Production[] productions = new Production[16];
+    /** 尚未成为子节点的节点 */
+    private int[] stack = new int[64];
+    private int top = 0;
+    private int shiftCount = 0;
+    private SyntaxTree tree = null;
+
+    /**
+     * @return 构造出的语法树, 在分析接受之后才可用
+     */
+    public SyntaxTree getTree() {
+        if (tree == null) {
+            throw new RuntimeException("Syntax tree is not complete yet");
+        }
+        return tree;
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        push(node(currentToken.getKind().getCode(), shiftCount++));
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        push(reduce(production));
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        final var root = reduce(beginProduction);
+        tree = new SyntaxTree(Arrays.copyOf(kinds, nodeCount), Arrays.copyOf(firstChildren, nodeCount),
+            Arrays.copyOf(nextSiblings, nodeCount), Arrays.copyOf(tokenIndices, nodeCount), productions, root);
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        // do nothing
+    }
+
+    /**
+     * 弹出产生式体长度个节点, 作为新的内部节点的子节点
+     */
+    private int reduce(Production production) {
+        final var index = production.index();
+        if (index >= productions.length) {
+            productions = Arrays.copyOf(productions, Math.max(productions.length * 2, index + 1));
+        }
+        productions[index] = production;
+        final var length = production.body().size();
+        final var node = node(index, SyntaxTree.NONE);
+        top -= length;
+        for (int idx = 0; idx < length; idx++) {
+            nextSiblings[stack[top + idx]] = idx + 1 < length ? stack[top + idx + 1] : SyntaxTree.NONE;
+        }
+        firstChildren[node] = length > 0 ? stack[top] : SyntaxTree.NONE;
+        return node;
+    }
+
+    private int node(int kind, int tokenIndex) {
+        if (nodeCount == kinds.length) {
+            final var capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            tokenIndices = Arrays.copyOf(tokenIndices, capacity);
+        }
+        kinds[nodeCount] = kind;
+        firstChildren[nodeCount] = SyntaxTree.NONE;
+        nextSiblings[nodeCount] = SyntaxTree.NONE;
+        tokenIndices[nodeCount] = tokenIndex;
+        return nodeCount++;
+    }
+
+    private void push(int node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = node;
+    }
+}
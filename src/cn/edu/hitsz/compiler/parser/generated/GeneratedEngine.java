@@ -0,0 +1,1005 @@
+package cn.edu.hitsz.compiler.parser.generated;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.ParseEventRing;
+import cn.edu.hitsz.compiler.parser.ParserEngine;
+
+import java.util.Arrays;
+
+/**
+ * 由 EngineGenerator 根据 LR 分析表生成的驱动程序, 请勿手工修改
+ *
+ * @see cn.edu.hitsz.compiler.parser.EngineGenerator
+ */
+public final class GeneratedEngine implements ParserEngine {
+    private static final int SHIFT = 1;
+    private static final int REDUCE = 2;
+    private static final int ACCEPT = 3;
+
+    @Override
+    public long fingerprint() {
+        return 0xe7dc843e5b3b9f61L;
+    }
+
+    @Override
+    public void parse(TokenBuffer tokens, ParseEventRing.Sink sink) {
+        int[] states = new int[64];
+        int[] pending = new int[64];
+        int top = 0;
+        int state = 0;
+        int pos = 0;
+        states[0] = state;
+        while (true) {
+            final int code = tokens.kindCode(pos);
+            if (pending[top] > 0 && !continuesList(state, code)) {
+                flushList(state, pending[top], sink);
+                pending[top] = 0;
+            }
+            switch (state) {
+                case 0 -> {
+                    switch (code) {
+                        case 1 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 4;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 2 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 6;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 5;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 1 -> {
+                    switch (code) {
+                        case 5 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 7;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 2 -> {
+                    switch (code) {
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 8;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 3 -> {
+                    switch (code) {
+                        case -1 -> {
+                            sink.accept(ACCEPT, state, 0);
+                            return;
+                        }
+                        case 1 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 4;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 2 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 6;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 5;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 4 -> {
+                    switch (code) {
+                        case 51 -> {
+                            // D -> int
+                            top -= 1;
+                            state = goto_D(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 5);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 5 -> {
+                    switch (code) {
+                        case 3 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 10;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 6 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 7 -> {
+                    switch (code) {
+                        case -1 -> {
+                            // S_list -> S Semicolon
+                            top -= 2;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = 1;
+                        }
+                        case 1 -> {
+                            // S_list -> S Semicolon
+                            top -= 2;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = 1;
+                        }
+                        case 2 -> {
+                            // S_list -> S Semicolon
+                            top -= 2;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = 1;
+                        }
+                        case 51 -> {
+                            // S_list -> S Semicolon
+                            top -= 2;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = 1;
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 8 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // S -> D id
+                            top -= 2;
+                            state = goto_S(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 4);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 9 -> {
+                    switch (code) {
+                        case 5 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 17;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 10 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 11 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // E -> A
+                            top -= 1;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 10);
+                        }
+                        case 6 -> {
+                            // E -> A
+                            top -= 1;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 10);
+                        }
+                        case 7 -> {
+                            // E -> A
+                            top -= 1;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 10);
+                        }
+                        case 8 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 19;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 11 -> {
+                            // E -> A
+                            top -= 1;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 10);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 12 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // A -> B
+                            top -= 1;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 12);
+                        }
+                        case 6 -> {
+                            // A -> B
+                            top -= 1;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 12);
+                        }
+                        case 7 -> {
+                            // A -> B
+                            top -= 1;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 12);
+                        }
+                        case 8 -> {
+                            // A -> B
+                            top -= 1;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 12);
+                        }
+                        case 11 -> {
+                            // A -> B
+                            top -= 1;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 12);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 13 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // S -> return E
+                            top -= 2;
+                            state = goto_S(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 7);
+                        }
+                        case 6 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 20;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 7 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 21;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 14 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 15 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // B -> IntConst
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 15);
+                        }
+                        case 6 -> {
+                            // B -> IntConst
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 15);
+                        }
+                        case 7 -> {
+                            // B -> IntConst
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 15);
+                        }
+                        case 8 -> {
+                            // B -> IntConst
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 15);
+                        }
+                        case 11 -> {
+                            // B -> IntConst
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 15);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 16 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // B -> id
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 14);
+                        }
+                        case 6 -> {
+                            // B -> id
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 14);
+                        }
+                        case 7 -> {
+                            // B -> id
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 14);
+                        }
+                        case 8 -> {
+                            // B -> id
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 14);
+                        }
+                        case 11 -> {
+                            // B -> id
+                            top -= 1;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 14);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 17 -> {
+                    switch (code) {
+                        case -1 -> {
+                            // S_list -> S_list S Semicolon
+                            final int count = pending[top - 2] + 1;
+                            top -= 3;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = count;
+                        }
+                        case 1 -> {
+                            // S_list -> S_list S Semicolon
+                            final int count = pending[top - 2] + 1;
+                            top -= 3;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = count;
+                        }
+                        case 2 -> {
+                            // S_list -> S_list S Semicolon
+                            final int count = pending[top - 2] + 1;
+                            top -= 3;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = count;
+                        }
+                        case 51 -> {
+                            // S_list -> S_list S Semicolon
+                            final int count = pending[top - 2] + 1;
+                            top -= 3;
+                            state = goto_S_list(states[top]);
+                            states[++top] = state;
+                            pending[top] = count;
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 18 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // S -> id = E
+                            top -= 3;
+                            state = goto_S(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 6);
+                        }
+                        case 6 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 20;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 7 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 21;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 19 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 20 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 21 -> {
+                    switch (code) {
+                        case 10 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 14;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 51 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 16;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 52 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 15;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 22 -> {
+                    switch (code) {
+                        case 6 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 20;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 7 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 21;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 11 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 26;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 23 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // A -> A * B
+                            top -= 3;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 11);
+                        }
+                        case 6 -> {
+                            // A -> A * B
+                            top -= 3;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 11);
+                        }
+                        case 7 -> {
+                            // A -> A * B
+                            top -= 3;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 11);
+                        }
+                        case 8 -> {
+                            // A -> A * B
+                            top -= 3;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 11);
+                        }
+                        case 11 -> {
+                            // A -> A * B
+                            top -= 3;
+                            state = goto_A(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 11);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 24 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // E -> E + A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 8);
+                        }
+                        case 6 -> {
+                            // E -> E + A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 8);
+                        }
+                        case 7 -> {
+                            // E -> E + A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 8);
+                        }
+                        case 8 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 19;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 11 -> {
+                            // E -> E + A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 8);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 25 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // E -> E - A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 9);
+                        }
+                        case 6 -> {
+                            // E -> E - A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 9);
+                        }
+                        case 7 -> {
+                            // E -> E - A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 9);
+                        }
+                        case 8 -> {
+                            if (++top == states.length) {
+                                states = grow(states);
+                                pending = grow(pending);
+                            }
+                            states[top] = state = 19;
+                            pending[top] = 0;
+                            sink.accept(SHIFT, state, pos++);
+                        }
+                        case 11 -> {
+                            // E -> E - A
+                            top -= 3;
+                            state = goto_E(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 9);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                case 26 -> {
+                    switch (code) {
+                        case 5 -> {
+                            // B -> ( E )
+                            top -= 3;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 13);
+                        }
+                        case 6 -> {
+                            // B -> ( E )
+                            top -= 3;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 13);
+                        }
+                        case 7 -> {
+                            // B -> ( E )
+                            top -= 3;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 13);
+                        }
+                        case 8 -> {
+                            // B -> ( E )
+                            top -= 3;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 13);
+                        }
+                        case 11 -> {
+                            // B -> ( E )
+                            top -= 3;
+                            state = goto_B(states[top]);
+                            states[++top] = state;
+                            pending[top] = 0;
+                            sink.accept(REDUCE, state, 13);
+                        }
+                        default -> throw error(tokens, pos);
+                    }
+                }
+                default -> throw new IllegalStateException("Unknown state: " + state);
+            }
+        }
+    }
+
+    private static int goto_P(int state) {
+        throw new IllegalStateException("No goto on P from state " + state);
+    }
+
+    private static int goto_A(int state) {
+        return switch (state) {
+            case 6 -> 11;
+            case 10 -> 11;
+            case 14 -> 11;
+            case 20 -> 24;
+            case 21 -> 25;
+            default -> throw new IllegalStateException("No goto on A from state " + state);
+        };
+    }
+
+    private static int goto_B(int state) {
+        return switch (state) {
+            case 6 -> 12;
+            case 10 -> 12;
+            case 14 -> 12;
+            case 19 -> 23;
+            case 20 -> 12;
+            case 21 -> 12;
+            default -> throw new IllegalStateException("No goto on B from state " + state);
+        };
+    }
+
+    private static int goto_S(int state) {
+        return switch (state) {
+            case 0 -> 1;
+            case 3 -> 9;
+            default -> throw new IllegalStateException("No goto on S from state " + state);
+        };
+    }
+
+    private static int goto_D(int state) {
+        return switch (state) {
+            case 0 -> 2;
+            case 3 -> 2;
+            default -> throw new IllegalStateException("No goto on D from state " + state);
+        };
+    }
+
+    private static int goto_E(int state) {
+        return switch (state) {
+            case 6 -> 13;
+            case 10 -> 18;
+            case 14 -> 22;
+            default -> throw new IllegalStateException("No goto on E from state " + state);
+        };
+    }
+
+    private static int goto_S_list(int state) {
+        return switch (state) {
+            case 0 -> 3;
+            default -> throw new IllegalStateException("No goto on S_list from state " + state);
+        };
+    }
+
+    private static boolean continuesList(int state, int code) {
+        return switch (state) {
+            case 3 -> code == 1 || code == 2 || code == 51;
+            default -> false;
+        };
+    }
+
+    private static void flushList(int state, int count, ParseEventRing.Sink sink) {
+        final int base;
+        final int recursion;
+        switch (state) {
+            case 3 -> {
+                base = 3;
+                recursion = 2;
+            }
+            default -> throw new IllegalStateException("No list on state " + state);
+        }
+        sink.accept(REDUCE, state, base);
+        for (int idx = 1; idx < count; idx++) {
+            sink.accept(REDUCE, state, recursion);
+        }
+    }
+
+    private static int[] grow(int[] stack) {
+        return Arrays.copyOf(stack, stack.length * 2);
+    }
+
+    private static RuntimeException error(TokenBuffer tokens, int pos) {
+        return new RuntimeException("Syntax analysis failed at %s! ".formatted(
+                tokens.positions().describe(tokens.start(pos))) +
+                "It is not a sentence pattern corresponding to grammar.");
+    }
+}
+
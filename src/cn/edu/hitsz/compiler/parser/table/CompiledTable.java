@@ -0,0 +1,345 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.*;
+
+/**
+ * 编译后的 LR 分析表, 供 LR 驱动程序在分析过程中直接以下标查表
+ * <br>
+ * LRTable 中的每次查表都要对文法符号的名字做散列, 而这里的 action 与 goto 表都是按行展开的 int 数组:
+ * action 表以 {@code 状态编号 * terminalWidth + 词法单元类型的码点 + 1} 为下标, goto 表以 {@code 状态编号 * 非终结符数 + 非终结符编号} 为下标.
+ * action 表中的每个元素的低 2 位为动作类型, 其余位为移进的目标状态编号或规约的产生式编号, 0 表示错误.
+ * 产生式的头部与长度也预先按产生式编号存放在数组中, 规约时无需访问 Production 对象.
+ * <br>
+ * 若分析表由 TableGenerator 将右递归列表改写为左递归后生成, 则表中会出现文法文件之外的产生式 {@code L -> L alpha}.
+ * 此时 listRoles 标出列表的两条产生式, 驱动程序对它们的规约只计数而不通知观察者, 等到列表结束时再按原文法的顺序补发
+ * 一次 {@code L -> alpha} 与若干次 {@code L -> alpha L}.
+ * <br>
+ * 若编译时消除单产生式, 则 chainRows 与 chainIds 记录每次规约之后紧接着的单产生式 {@code X -> Y} 的规约链:
+ * 规约出 Y 后, 这些规约只是依次把栈顶的 Y 换成 X, 并按弹出后的同一个状态查 goto 表, 所以整条链可以预先求出,
+ * 驱动程序直接跳到链末的状态, 只在有观察者关心时才逐个通知链上的产生式.
+ * 规约链由弹出后的状态, 规约出的非终结符与向前看码点决定, 但绝大多数组合都没有规约链, 各组合在所有码点上的规约链编号也大量重复.
+ * 所以按 goto 表的下标只存一个行号, 相同的行只存一次, 所占空间为 goto 表的大小加上不同的行数乘以 terminalWidth.
+ *
+ * @param terminalWidth     action 表每行的宽度, 即最大码点 + 2
+ * @param actions           按行展开的 action 表
+ * @param nonTerminalCount  非终结符的数量, 非终结符按其在 LRTable 中的顺序编号
+ * @param gotos             按行展开的 goto 表, -1 表示错误
+ * @param productionHeads   各产生式头部的非终结符编号, 以产生式编号为下标
+ * @param productionLengths 各产生式体的长度, 以产生式编号为下标
+ * @param statuses          各状态, 以状态编号为下标
+ * @param productions       各产生式, 以产生式编号为下标
+ * @param initState         初始状态编号
+ * @param listRoles         各产生式在改写后的列表中的角色, 以产生式编号为下标
+ * @param listBases         以非终结符编号为下标, 列表的 {@code L -> alpha} 的产生式编号, 不是列表时为 0
+ * @param listRecursions    以非终结符编号为下标, 原文法中列表的 {@code L -> alpha L} 的产生式编号, 不是列表时为 0
+ * @param listContinues     按行展开, 以 {@code 非终结符编号 * terminalWidth + 码点 + 1} 为下标, 该码点能否开始列表的下一个元素
+ * @param chainRows         与 goto 表的下标相同, 在该状态下规约出该非终结符之后规约链所在的行, 0 表示对任何码点都没有规约链;
+ *                          不消除单产生式时为 null
+ * @param chainIds          按行展开, 以 {@code 行号 * terminalWidth + 码点 + 1} 为下标, 向前看为该码点时随后的规约链编号,
+ *                          0 表示没有规约链, 第 0 行全为 0; 不消除单产生式时为 null
+ * @param chains            各规约链, 依次存放链上每个单产生式的编号及其规约后 goto 到的状态编号, 下标 0 不使用
+ * @author Klasnov
+ * @see LRTable
+ */
+public record CompiledTable(int terminalWidth,
+                            int[] actions,
+                            int nonTerminalCount,
+                            int[] gotos,
+                            int[] productionHeads,
+                            int[] productionLengths,
+                            Status[] statuses,
+                            Production[] productions,
+                            int initState,
+                            int[] listRoles,
+                            int[] listBases,
+                            int[] listRecursions,
+                            boolean[] listContinues,
+                            int[] chainRows,
+                            int[] chainIds,
+                            int[][] chains) {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+    /** 普通的产生式 */
+    public static final int LIST_NONE = 0;
+    /** 列表的第一个元素, 即 {@code L -> alpha} */
+    public static final int LIST_BASE = 1;
+    /** 改写出的 {@code L -> L alpha} */
+    public static final int LIST_APPEND = 2;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    /**
+     * 将 LRTable 编译为数组形式, 不消除单产生式
+     *
+     * @param table LR 分析表, 可以来自 TableGenerator 或 TableLoader
+     * @return 编译后的分析表
+     */
+    public static CompiledTable compile(LRTable table) {
+        return compile(table, false);
+    }
+
+    /**
+     * 将 LRTable 编译为数组形式
+     *
+     * @param table                 LR 分析表, 可以来自 TableGenerator 或 TableLoader
+     * @param elideUnitProductions 是否消除单产生式的规约
+     * @return 编译后的分析表
+     */
+    public static CompiledTable compile(LRTable table, boolean elideUnitProductions) {
+        final var grammar = GrammarInfo.getProductionsInOrder();
+        final var statusCount = table.statusInIndexOrder().stream().mapToInt(Status::index).max().orElse(-1) + 1;
+        final var terminalWidth = TokenKind.allAllowedTokenKinds().values().stream()
+            .mapToInt(TokenKind::getCode).max().orElse(-1) + 2;
+
+        // 分析表中可能含有改写列表时新增的产生式
+        final var all = new LinkedHashMap<Integer, Production>();
+        grammar.forEach(production -> all.put(production.index(), production));
+        for (final var status : table.statusInIndexOrder()) {
+            for (final var action : status.action().values()) {
+                if (action.getKind() == Action.ActionKind.Reduce) {
+                    all.putIfAbsent(action.getProduction().index(), action.getProduction());
+                }
+            }
+        }
+        final var productionCount = all.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+
+        // 非终结符按名字编号, TableLoader 与 GrammarInfo 构造的 NonTerminal 对象可能不是同一个
+        final var nonTerminals = table.nonTerminals();
+        final var nonTerminalIndex = new HashMap<NonTerminal, Integer>();
+        for (int idx = 0; idx < nonTerminals.size(); idx++) {
+            nonTerminalIndex.put(nonTerminals.get(idx), idx);
+        }
+
+        final var productions = new Production[productionCount];
+        final var productionHeads = new int[productionCount];
+        final var productionLengths = new int[productionCount];
+        for (final var production : all.values()) {
+            productions[production.index()] = production;
+            productionHeads[production.index()] = nonTerminalIndex.getOrDefault(production.head(), -1);
+            productionLengths[production.index()] = production.body().size();
+        }
+
+        final var statuses = new Status[statusCount];
+        final var actions = new int[statusCount * terminalWidth];
+        final var gotos = new int[statusCount * nonTerminals.size()];
+        for (final var status : table.statusInIndexOrder()) {
+            statuses[status.index()] = status;
+            for (final var terminal : table.terminals()) {
+                actions[status.index() * terminalWidth + terminal.getCode() + 1] = pack(status.getAction(terminal));
+            }
+            for (int idx = 0; idx < nonTerminals.size(); idx++) {
+                final var target = status.getGoto(nonTerminals.get(idx));
+                gotos[status.index() * nonTerminals.size() + idx] = target.isError() ? -1 : target.index();
+            }
+        }
+
+        // 识别改写过的列表: 文法文件之外的 L -> L alpha, 对应原文法中的 L -> alpha L 与 L -> alpha
+        final var listRoles = new int[productionCount];
+        final var listBases = new int[nonTerminals.size()];
+        final var listRecursions = new int[nonTerminals.size()];
+        final var listContinues = new boolean[nonTerminals.size() * terminalWidth];
+        for (final var append : all.values()) {
+            if (grammar.contains(append)) {
+                continue;
+            }
+            final var head = append.head();
+            final var alpha = append.body().subList(1, append.body().size());
+            final var recursive = new ArrayList<Term>(alpha);
+            recursive.add(head);
+            final var base = grammar.stream()
+                .filter(production -> production.head().equals(head) && production.body().equals(alpha)).findFirst();
+            final var original = grammar.stream()
+                .filter(production -> production.head().equals(head) && production.body().equals(recursive)).findFirst();
+            if (base.isEmpty() || original.isEmpty()) {
+                throw new RuntimeException("Unknown production in table: " + append);
+            }
+            final var list = nonTerminalIndex.get(head);
+            listRoles[append.index()] = LIST_APPEND;
+            listRoles[base.get().index()] = LIST_BASE;
+            listBases[list] = base.get().index();
+            listRecursions[list] = original.get().index();
+            for (final var terminal : first(alpha.get(0), grammar, new HashSet<>())) {
+                listContinues[list * terminalWidth + terminal.getCode() + 1] = true;
+            }
+        }
+
+        final var chains = new ArrayList<int[]>();
+        chains.add(new int[0]);
+        final var chainRows = elideUnitProductions ? new int[gotos.length] : null;
+        final var chainIds = elideUnitProductions
+            ? findChains(statusCount, terminalWidth, nonTerminals.size(), actions, gotos, productions, productionHeads, listRoles,
+                chainRows, chains)
+            : null;
+
+        return new CompiledTable(terminalWidth, actions, nonTerminals.size(), gotos,
+            productionHeads, productionLengths, statuses, productions, table.getInit().index(),
+            listRoles, listBases, listRecursions, listContinues, chainRows, chainIds, chains.toArray(int[][]::new));
+    }
+
+    /**
+     * 求出每个状态, 非终结符与向前看码点对应的单产生式规约链, 相同的链与相同的行都只保存一次
+     *
+     * @param chainRows 输出, 与 goto 表的下标相同, 各状态与非终结符的规约链所在的行
+     * @return 按行展开的规约链编号
+     */
+    private static int[] findChains(int statusCount, int terminalWidth, int nonTerminalCount, int[] actions, int[] gotos,
+                                    Production[] productions, int[] productionHeads, int[] listRoles, int[] chainRows,
+                                    List<int[]> chains) {
+        final var known = new HashMap<List<Integer>, Integer>();
+        final var rows = new LinkedHashMap<List<Integer>, Integer>();
+        rows.put(Collections.nCopies(terminalWidth, 0), 0);
+        for (int state = 0; state < statusCount; state++) {
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                final var slot = state * nonTerminalCount + nonTerminal;
+                if (gotos[slot] < 0) {
+                    continue;
+                }
+                final var row = new Integer[terminalWidth];
+                for (int column = 0; column < terminalWidth; column++) {
+                    final var chain = new ArrayList<Integer>();
+                    var current = gotos[slot];
+                    while (chain.size() < productions.length * 2) {
+                        final var action = actions[current * terminalWidth + column];
+                        if (kindOf(action) != REDUCE) {
+                            break;
+                        }
+                        final var unit = operandOf(action);
+                        final var body = productions[unit].body();
+                        if (body.size() != 1 || !(body.get(0) instanceof NonTerminal) || listRoles[unit] != LIST_NONE) {
+                            break;
+                        }
+                        final var next = gotos[state * nonTerminalCount + productionHeads[unit]];
+                        if (next < 0) {
+                            break;
+                        }
+                        chain.add(unit);
+                        chain.add(next);
+                        current = next;
+                    }
+                    row[column] = chain.isEmpty() ? 0 : known.computeIfAbsent(chain, key -> {
+                        chains.add(key.stream().mapToInt(Integer::intValue).toArray());
+                        return chains.size() - 1;
+                    });
+                }
+                chainRows[slot] = rows.computeIfAbsent(List.of(row), key -> rows.size());
+            }
+        }
+
+        // 行号乘以 terminalWidth 必须仍在 int 的范围内
+        final var chainIds = new int[Math.multiplyExact(rows.size(), terminalWidth)];
+        int at = 0;
+        for (final var row : rows.keySet()) {
+            for (final var id : row) {
+                chainIds[at++] = id;
+            }
+        }
+        return chainIds;
+    }
+
+    /**
+     * 求文法符号的 first 集合, 文法中没有空产生式
+     */
+    private static Set<TokenKind> first(Term term, List<Production> grammar, Set<Term> visited) {
+        if (term instanceof TokenKind terminal) {
+            return Set.of(terminal);
+        }
+        final var result = new HashSet<TokenKind>();
+        if (visited.add(term)) {
+            for (final var production : grammar) {
+                if (production.head().equals(term)) {
+                    result.addAll(first(production.body().get(0), grammar, visited));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int pack(Action action) {
+        return switch (action.getKind()) {
+            case Shift -> SHIFT | action.getStatus().index() << KIND_BITS;
+            case Reduce -> REDUCE | action.getProduction().index() << KIND_BITS;
+            case Accept -> ACCEPT;
+            case Error -> ERROR;
+        };
+    }
+
+    /**
+     * @param state 状态编号
+     * @param code  向前看词法单元类型的码点
+     * @return 打包后的动作
+     */
+    public int action(int state, int code) {
+        return actions[state * terminalWidth + code + 1];
+    }
+
+    /**
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约的产生式编号
+     * @return goto 到的状态编号, -1 表示错误
+     */
+    public int gotoState(int state, int production) {
+        return gotos[state * nonTerminalCount + productionHeads[production]];
+    }
+
+    /**
+     * @param list 列表的非终结符编号
+     * @param code 向前看词法单元类型的码点
+     * @return 该词法单元能否开始列表的下一个元素
+     */
+    public boolean continuesList(int list, int code) {
+        return listContinues[list * terminalWidth + code + 1];
+    }
+
+    /**
+     * 求分析表的指纹, 由 action 表, goto 表, 初始状态与各产生式的文本决定, 与是否消除单产生式无关
+     *
+     * @return 64 位 FNV-1a 散列值
+     */
+    public long fingerprint() {
+        long hash = mix(mix(mix(0xcbf29ce484222325L, terminalWidth), nonTerminalCount), initState);
+        for (final var action : actions) {
+            hash = mix(hash, action);
+        }
+        for (final var target : gotos) {
+            hash = mix(hash, target);
+        }
+        for (final var production : productions) {
+            hash = mix(hash, production == null ? 0 : production.toString().hashCode());
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    /**
+     * @param state       规约弹出产生式体之后栈顶的状态编号
+     * @param nonTerminal 规约出的非终结符编号
+     * @param code        向前看词法单元类型的码点
+     * @return 随后的规约链编号, 0 表示没有规约链或不消除单产生式
+     */
+    public int chainOf(int state, int nonTerminal, int code) {
+        return chainIds == null ? 0 : chainIds[chainRows[state * nonTerminalCount + nonTerminal] * terminalWidth + code + 1];
+    }
+
+    /**
+     * @param action 打包后的动作
+     * @return 动作类型, 为 ERROR, SHIFT, REDUCE 或 ACCEPT 之一
+     */
+    public static int kindOf(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 打包后的移进或规约动作
+     * @return 移进的目标状态编号或规约的产生式编号
+     */
+    public static int operandOf(int action) {
+        return action >>> KIND_BITS;
+    }
+}
@@ -0,0 +1,266 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * 压缩后的 LR 分析表, 查表的结果与 {@link CompiledTable#action(int, int)} 及 {@link CompiledTable#gotoState(int, int)} 相同
+ * <br>
+ * 稠密的 action 表中大部分元素都是错误. 这里按行位移 (comb vector) 的方法把各行的非空元素叠放到同一个数组中:
+ * 状态 s 的第 c 列存放在 {@code bases[s] + c} 处, 同时在该处记下所属的状态 s 作为检查值. 查表时若检查值不是 s, 说明该行在此列为空.
+ * 检查值与元素相邻存放, 一次查表只访问一条缓存行. 各行按非空元素从多到少的顺序, 放到第一个不与已放好的行冲突的位移处.
+ * goto 表以同样的方法压缩.
+ * <br>
+ * 若开启默认规约, 则每个状态中出现最多的规约动作作为该状态的默认动作, 不再占用位置, 行中为空的列都按默认动作处理.
+ * 这与 yacc 的做法相同: 遇到错误的词法单元时可能先做若干次规约, 但在移进之前一定会发现错误. 依赖 ERROR 判断能否接受某个词法单元的
+ * 调用者 (例如错误恢复) 应当使用不开启默认规约的压缩表.
+ * <br>
+ * 除了两张表之外, 压缩表还引用了 CompiledTable 中按产生式与非终结符存放的信息 (产生式的头部与长度, 列表的角色等), 以便驱动程序只持有压缩表.
+ * 压缩时不再核对结果, 核对由调试用的 {@link CompressedTableVerifier} 完成.
+ *
+ * @param terminalWidth    action 表每行的宽度, 与 CompiledTable 相同
+ * @param nonTerminalCount 非终结符的数量
+ * @param actionBases      以状态编号为下标, 该状态的行在 actionSlots 中的位移
+ * @param actionSlots      依次存放每个位置的检查值与打包后的动作, 检查值为 -1 表示该位置空闲
+ * @param defaultActions   以状态编号为下标, 该状态的默认动作, 没有默认规约时为 ERROR
+ * @param gotoBases        以状态编号为下标, 该状态的行在 gotoSlots 中的位移
+ * @param gotoSlots        依次存放每个位置的检查值与 goto 到的状态编号
+ * @param productionHeads  各产生式头部的非终结符编号, 以产生式编号为下标
+ * @param productionLengths 各产生式体的长度, 以产生式编号为下标
+ * @param statuses         各状态, 以状态编号为下标
+ * @param productions      各产生式, 以产生式编号为下标
+ * @param initState        初始状态编号
+ * @param listRoles        各产生式在改写后的列表中的角色, 同 CompiledTable
+ * @param listBases        以非终结符编号为下标, 列表的 {@code L -> alpha} 的产生式编号, 同 CompiledTable
+ * @param listRecursions   以非终结符编号为下标, 原文法中列表的 {@code L -> alpha L} 的产生式编号, 同 CompiledTable
+ * @param listContinues    能否开始列表的下一个元素, 同 CompiledTable
+ * @param denseBytes       压缩前 action 表与 goto 表所占的字节数
+ * @author Klasnov
+ * @see CompiledTable
+ */
+public record CompressedTable(int terminalWidth,
+                              int nonTerminalCount,
+                              int[] actionBases,
+                              int[] actionSlots,
+                              int[] defaultActions,
+                              int[] gotoBases,
+                              int[] gotoSlots,
+                              int[] productionHeads,
+                              int[] productionLengths,
+                              Status[] statuses,
+                              Production[] productions,
+                              int initState,
+                              int[] listRoles,
+                              int[] listBases,
+                              int[] listRecursions,
+                              boolean[] listContinues,
+                              long denseBytes) {
+    private static final int FREE = -1;
+
+    /**
+     * 压缩分析表
+     *
+     * @param table             编译后的分析表
+     * @param defaultReductions 是否为每个状态选出默认规约
+     * @return 压缩后的分析表
+     */
+    public static CompressedTable compress(CompiledTable table, boolean defaultReductions) {
+        final var width = table.terminalWidth();
+        final var statusCount = table.actions().length / width;
+        final var actions = table.actions();
+
+        final var defaultActions = new int[statusCount];
+        if (defaultReductions) {
+            for (int state = 0; state < statusCount; state++) {
+                defaultActions[state] = mostFrequentReduce(actions, state * width, width);
+            }
+        }
+        final var actionBases = new int[statusCount];
+        final var actionSlots = displace(actions, width, statusCount, CompiledTable.ERROR, defaultActions, actionBases);
+
+        final var gotos = table.gotos();
+        final var noGoto = new int[statusCount];
+        Arrays.fill(noGoto, -1);
+        final var gotoBases = new int[statusCount];
+        final var gotoSlots = displace(gotos, table.nonTerminalCount(), statusCount, -1, noGoto, gotoBases);
+
+        return new CompressedTable(width, table.nonTerminalCount(), actionBases, actionSlots, defaultActions,
+            gotoBases, gotoSlots, table.productionHeads(), table.productionLengths(), table.statuses(), table.productions(),
+            table.initState(), table.listRoles(), table.listBases(), table.listRecursions(), table.listContinues(),
+            (long) (actions.length + gotos.length) * Integer.BYTES);
+    }
+
+    /**
+     * @return 该行中出现最多的规约动作, 没有规约动作时为 ERROR
+     */
+    private static int mostFrequentReduce(int[] dense, int from, int width) {
+        int best = CompiledTable.ERROR;
+        int bestCount = 0;
+        for (int column = 0; column < width; column++) {
+            final var action = dense[from + column];
+            if (CompiledTable.kindOf(action) != CompiledTable.REDUCE || action == best) {
+                continue;
+            }
+            int count = 0;
+            for (int other = column; other < width; other++) {
+                if (dense[from + other] == action) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = action;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按行位移的方法叠放稠密表中的非空元素
+     *
+     * @param dense    按行展开的稠密表
+     * @param width    每行的宽度
+     * @param rows     行数
+     * @param empty    表示空元素的值
+     * @param defaults 以行号为下标, 该行的默认值, 空元素与等于默认值的元素都不占位置
+     * @param bases    以行号为下标, 输出各行的位移
+     * @return 依次存放检查值与元素的数组, 长度保证任意一行的任意一列都不越界
+     */
+    private static int[] displace(int[] dense, int width, int rows, int empty, int[] defaults, int[] bases) {
+        final var columns = new int[rows][];
+        for (int row = 0; row < rows; row++) {
+            final var from = row * width;
+            final var fallback = defaults[row];
+            columns[row] = IntStream.range(0, width)
+                .filter(column -> dense[from + column] != empty && dense[from + column] != fallback).toArray();
+        }
+
+        var checks = new int[Math.max(width * 2, 16)];
+        Arrays.fill(checks, FREE);
+        // 以位置为下标, 不早于该位置的空闲位置; 被占用的位置指向其后面的位置, 查找时沿途压缩路径
+        var nextFree = IntStream.range(0, checks.length).toArray();
+        int end = 0;
+        final var order = IntStream.range(0, rows).boxed()
+            .sorted(Comparator.comparingInt((Integer row) -> columns[row].length).reversed()).toList();
+        for (final int row : order) {
+            final var used = columns[row];
+            if (used.length == 0) {
+                continue;
+            }
+            // 候选的位移只需要让第一列落在空闲位置上
+            var base = findFree(nextFree, used[0]) - used[0];
+            while (true) {
+                if (base + width > checks.length) {
+                    final var capacity = Math.max(checks.length * 2, base + width);
+                    final var grown = Arrays.copyOf(checks, capacity);
+                    Arrays.fill(grown, checks.length, capacity, FREE);
+                    final var grownNext = Arrays.copyOf(nextFree, capacity);
+                    for (int slot = checks.length; slot < capacity; slot++) {
+                        grownNext[slot] = slot;
+                    }
+                    checks = grown;
+                    nextFree = grownNext;
+                }
+                var fits = true;
+                for (final var column : used) {
+                    if (checks[base + column] != FREE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+                base = findFree(nextFree, base + used[0] + 1) - used[0];
+            }
+            bases[row] = base;
+            for (final var column : used) {
+                checks[base + column] = row;
+                nextFree[base + column] = base + column + 1;
+            }
+            end = Math.max(end, base + width);
+        }
+
+        final var slots = new int[Math.max(end, width) * 2];
+        for (int slot = 0; slot * 2 < slots.length; slot++) {
+            slots[slot * 2] = checks[slot];
+        }
+        for (int row = 0; row < rows; row++) {
+            for (final var column : columns[row]) {
+                slots[(bases[row] + column) * 2 + 1] = dense[row * width + column];
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * @return 不早于 slot 的第一个空闲位置, 可能等于 nextFree 的长度
+     */
+    private static int findFree(int[] nextFree, int slot) {
+        var root = slot;
+        while (root < nextFree.length && nextFree[root] != root) {
+            root = nextFree[root];
+        }
+        while (slot < nextFree.length && nextFree[slot] != slot) {
+            final var next = nextFree[slot];
+            nextFree[slot] = root;
+            slot = next;
+        }
+        return root;
+    }
+
+    /**
+     * @param state 状态编号
+     * @param code  向前看词法单元类型的码点
+     * @return 打包后的动作, 开启默认规约时原本为 ERROR 的位置可能返回该状态的默认规约
+     */
+    public int action(int state, int code) {
+        final var slot = (actionBases[state] + code + 1) * 2;
+        return actionSlots[slot] == state ? actionSlots[slot + 1] : defaultActions[state];
+    }
+
+    /**
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约的产生式编号
+     * @return goto 到的状态编号, -1 表示错误
+     */
+    public int gotoState(int state, int production) {
+        return gotoOf(state, productionHeads[production]);
+    }
+
+    /**
+     * @param list 列表的非终结符编号
+     * @param code 向前看词法单元类型的码点
+     * @return 该码点能否开始列表的下一个元素, 同 {@link CompiledTable#continuesList(int, int)}
+     */
+    public boolean continuesList(int list, int code) {
+        return listContinues[list * terminalWidth + code + 1];
+    }
+
+    int gotoOf(int state, int nonTerminal) {
+        final var slot = (gotoBases[state] + nonTerminal) * 2;
+        return gotoSlots[slot] == state ? gotoSlots[slot + 1] : -1;
+    }
+
+    /**
+     * @return 压缩后 action 表与 goto 表所占的字节数
+     */
+    public long compressedBytes() {
+        return (long) (actionBases.length + actionSlots.length + defaultActions.length
+            + gotoBases.length + gotoSlots.length) * Integer.BYTES;
+    }
+
+    /**
+     * @return 相比稠密的 action 表与 goto 表节省的字节数
+     */
+    public long savedBytes() {
+        return denseBytes - compressedBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "%d bytes, %d bytes (%.1f%%) saved against the dense form".formatted(
+            compressedBytes(), savedBytes(), denseBytes == 0 ? 0 : savedBytes() * 100.0 / denseBytes);
+    }
+}
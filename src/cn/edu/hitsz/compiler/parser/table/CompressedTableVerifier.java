@@ -0,0 +1,73 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+/**
+ * 调试用: 逐个状态, 逐列核对压缩表与稠密表的查表结果
+ * <br>
+ * 核对需要同时持有稠密表与压缩表, 所以不在压缩时进行, 修改压缩算法或文法之后运行 main 方法核对 Main 所用的分析表即可.
+ *
+ * @author Klasnov
+ * @see CompressedTable
+ */
+public final class CompressedTableVerifier {
+    private CompressedTableVerifier() {
+    }
+
+    /**
+     * 分别以关闭与开启默认规约的方式压缩 Main 所用的分析表并逐一核对
+     */
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var tableGenerator = new TableGenerator(true, TableGenerator.Method.LALR1);
+        tableGenerator.run();
+        final var table = tableGenerator.getCompiledTable(true);
+        for (final var defaultReductions : new boolean[]{false, true}) {
+            final var compressed = CompressedTable.compress(table, defaultReductions);
+            verify(table, compressed);
+            System.out.printf("default reductions %s: %s%n", defaultReductions, compressed);
+        }
+    }
+
+    /**
+     * 核对压缩表. 开启默认规约时, 稠密表中为 ERROR 的位置也可以是该状态的默认规约
+     *
+     * @param table      压缩前的分析表
+     * @param compressed 由 table 压缩得到的分析表
+     * @throws RuntimeException 某个位置的查表结果不同
+     */
+    public static void verify(CompiledTable table, CompressedTable compressed) {
+        final var width = table.terminalWidth();
+        final var nonTerminalCount = table.nonTerminalCount();
+        final var statusCount = table.actions().length / width;
+        for (int state = 0; state < statusCount; state++) {
+            for (int code = -1; code < width - 1; code++) {
+                final var expected = table.action(state, code);
+                final var actual = compressed.action(state, code);
+                if (actual != expected && (expected != CompiledTable.ERROR || actual != compressed.defaultActions()[state])) {
+                    throw new RuntimeException("Compressed action of state %d at code %d is %d, expected %d"
+                        .formatted(state, code, actual, expected));
+                }
+            }
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                final var expected = table.gotos()[state * nonTerminalCount + nonTerminal];
+                final var actual = compressed.gotoOf(state, nonTerminal);
+                if (actual != expected) {
+                    throw new RuntimeException("Compressed goto of state %d on non-terminal %d is %d, expected %d"
+                        .formatted(state, nonTerminal, actual, expected));
+                }
+            }
+        }
+        for (int production = 0; production < table.productionHeads().length; production++) {
+            if (table.productionHeads()[production] < 0) {
+                continue;
+            }
+            for (int state = 0; state < statusCount; state++) {
+                if (compressed.gotoState(state, production) != table.gotoState(state, production)) {
+                    throw new RuntimeException("Compressed goto of state %d after production %d differs"
+                        .formatted(state, production));
+                }
+            }
+        }
+    }
+}
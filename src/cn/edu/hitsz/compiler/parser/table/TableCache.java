@@ -0,0 +1,283 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Optional;
+
+/**
+ * 编译后的分析表的二进制缓存
+ * <br>
+ * 文件头依次为魔数, 格式版本与缓存键, 其后是 CompiledTable 中的各个 int 数组, 每个数组先写长度再写元素, 均为大端序.
+ * 读取时用一次 FileChannel.read 把整个文件读入缓冲区, 再把各数组批量复制出来, 不做任何文本解析.
+ * 文法文件中的产生式按编号从 GrammarInfo 中取出, 只有 TableGenerator 改写列表时新增的产生式以文本形式保存.
+ * 缓存中的状态只有编号, 读取后再按 action 表与 goto 表重建各 Status 的 action 与 goto, 使观察者在冷启动与命中缓存时看到相同的状态.
+ * <br>
+ * 缓存键由 grammar.txt 与 coding_map.csv 的内容及分析表的构造参数决定, 其中任一改变后缓存即失效, 需要重新生成.
+ *
+ * @author Klasnov
+ * @see CompiledTable
+ */
+public final class TableCache {
+    private static final int MAGIC = 0x4c525443;
+    private static final int VERSION = 2;
+
+    private TableCache() {
+    }
+
+    /**
+     * 求缓存键
+     *
+     * @param method               分析表的构造方法
+     * @param flattenLists         是否将右递归的列表改写为左递归
+     * @param elideUnitProductions 是否消除单产生式
+     * @return 64 位 FNV-1a 散列值
+     */
+    public static long key(TableGenerator.Method method, boolean flattenLists, boolean elideUnitProductions) {
+        long hash = 0xcbf29ce484222325L;
+        for (final var path : new String[]{FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH}) {
+            try {
+                for (final var b : Files.readAllBytes(Path.of(path))) {
+                    hash = mix(hash, b);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+        hash = mix(hash, VERSION);
+        hash = mix(hash, method.ordinal());
+        hash = mix(hash, flattenLists ? 1 : 0);
+        return mix(hash, elideUnitProductions ? 1 : 0);
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param path 缓存文件路径
+     * @param key  期望的缓存键
+     * @return 缓存的分析表; 文件不存在, 已损坏或缓存键不同时为空
+     */
+    public static Optional<CompiledTable> load(String path, long key) {
+        final ByteBuffer buffer;
+        try (final var channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 通常一次就能读完
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key) {
+                return Optional.empty();
+            }
+            final var terminalWidth = buffer.getInt();
+            final var nonTerminalCount = buffer.getInt();
+            final var initState = buffer.getInt();
+            final var actions = readInts(buffer);
+            final var gotos = readInts(buffer);
+            final var productionHeads = readInts(buffer);
+            final var productionLengths = readInts(buffer);
+            final var listRoles = readInts(buffer);
+            final var listBases = readInts(buffer);
+            final var listRecursions = readInts(buffer);
+            final var continues = readInts(buffer);
+            final var chainRows = readInts(buffer);
+            final var chainIds = readInts(buffer);
+            final var chains = new int[buffer.getInt()][];
+            for (int idx = 0; idx < chains.length; idx++) {
+                chains[idx] = readInts(buffer);
+            }
+
+            // 状态编号即其在数组中的位置, 未出现的状态为 -1
+            final var statusIndices = readInts(buffer);
+            final var statuses = new Status[statusIndices.length];
+            for (int idx = 0; idx < statuses.length; idx++) {
+                statuses[idx] = statusIndices[idx] < 0 ? null : Status.create(statusIndices[idx]);
+            }
+
+            final var listContinues = new boolean[continues.length];
+            for (int idx = 0; idx < continues.length; idx++) {
+                listContinues[idx] = continues[idx] != 0;
+            }
+
+            final var productions = new Production[productionLengths.length];
+            for (final var production : GrammarInfo.getProductionsInOrder()) {
+                productions[production.index()] = production;
+            }
+            final var extraCount = buffer.getInt();
+            for (int idx = 0; idx < extraCount; idx++) {
+                final var index = buffer.getInt();
+                final var text = new byte[buffer.getInt()];
+                buffer.get(text);
+                productions[index] = parseProduction(index, new String(text, StandardCharsets.UTF_8));
+            }
+
+            restoreStatuses(statuses, productions, terminalWidth, actions, nonTerminalCount, gotos, productionHeads);
+            return Optional.of(new CompiledTable(terminalWidth, actions, nonTerminalCount, gotos,
+                productionHeads, productionLengths, statuses, productions, initState,
+                listRoles, listBases, listRecursions, listContinues, chainRows, chainIds, chains));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 写入缓存, 先写到临时文件再替换, 以免其它进程读到写了一半的文件
+     *
+     * @param path  缓存文件路径
+     * @param key   缓存键
+     * @param table 编译后的分析表
+     */
+    public static void store(String path, long key, CompiledTable table) {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(key);
+            out.writeInt(table.terminalWidth());
+            out.writeInt(table.nonTerminalCount());
+            out.writeInt(table.initState());
+            writeInts(out, table.actions());
+            writeInts(out, table.gotos());
+            writeInts(out, table.productionHeads());
+            writeInts(out, table.productionLengths());
+            writeInts(out, table.listRoles());
+            writeInts(out, table.listBases());
+            writeInts(out, table.listRecursions());
+            final var continues = new int[table.listContinues().length];
+            for (int idx = 0; idx < continues.length; idx++) {
+                continues[idx] = table.listContinues()[idx] ? 1 : 0;
+            }
+            writeInts(out, continues);
+            writeInts(out, table.chainRows());
+            writeInts(out, table.chainIds());
+            out.writeInt(table.chains().length);
+            for (final var chain : table.chains()) {
+                writeInts(out, chain);
+            }
+
+            final var statusIndices = new int[table.statuses().length];
+            for (int idx = 0; idx < statusIndices.length; idx++) {
+                statusIndices[idx] = table.statuses()[idx] == null ? -1 : table.statuses()[idx].index();
+            }
+            writeInts(out, statusIndices);
+
+            final var grammar = GrammarInfo.getProductionsInOrder();
+            final var extra = new ArrayList<Production>();
+            for (final var production : table.productions()) {
+                if (production != null && !grammar.contains(production)) {
+                    extra.add(production);
+                }
+            }
+            out.writeInt(extra.size());
+            for (final var production : extra) {
+                final var text = production.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(production.index());
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+
+        final var target = Path.of(path);
+        try {
+            final var temp = Path.of(path + ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 按 action 表与 goto 表填充各状态的 action 与 goto. 非终结符的编号由以其为头部的产生式得到
+     */
+    private static void restoreStatuses(Status[] statuses, Production[] productions, int terminalWidth, int[] actions,
+                                        int nonTerminalCount, int[] gotos, int[] productionHeads) {
+        final var nonTerminals = new NonTerminal[nonTerminalCount];
+        for (int idx = 0; idx < productions.length; idx++) {
+            if (productions[idx] != null && productionHeads[idx] >= 0) {
+                nonTerminals[productionHeads[idx]] = productions[idx].head();
+            }
+        }
+        final var terminals = TokenKind.allAllowedTokenKinds().values();
+        for (final var status : statuses) {
+            if (status == null) {
+                continue;
+            }
+            final var state = status.index();
+            for (final var terminal : terminals) {
+                final var action = actions[state * terminalWidth + terminal.getCode() + 1];
+                final var kind = CompiledTable.kindOf(action);
+                final var operand = CompiledTable.operandOf(action);
+                if (kind == CompiledTable.SHIFT) {
+                    status.setAction(terminal, Action.shift(statuses[operand]));
+                } else if (kind == CompiledTable.REDUCE) {
+                    status.setAction(terminal, Action.reduce(productions[operand]));
+                } else if (kind == CompiledTable.ACCEPT) {
+                    status.setAction(terminal, Action.accept());
+                }
+            }
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                final var target = gotos[state * nonTerminalCount + nonTerminal];
+                if (target >= 0 && nonTerminals[nonTerminal] != null) {
+                    status.setGoto(nonTerminals[nonTerminal], statuses[target]);
+                }
+            }
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        final var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final var values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final var value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * 按 Production.toString 的格式还原产生式, 与 GrammarInfo 读取文法文件时的做法相同
+     */
+    private static Production parseProduction(int index, String text) {
+        final var words = text.split(" -> ");
+        final var body = new ArrayList<Term>();
+        for (final var name : words[1].split(" ")) {
+            body.add(TokenKind.isAllowed(name) ? TokenKind.fromString(name) : GrammarInfo.getNonTerminal(name));
+        }
+        return new Production(index, GrammarInfo.getNonTerminal(words[0]), body);
+    }
+}
@@ -4,17 +4,64 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除 SLR(1) 外, 还可以在同一个 LR(0) 自动机上求 LALR(1) 的向前看符号, 或构造规范 LR(1) 自动机, 见 {@link Method}.
  */
 public class TableGenerator {
+    /**
+     * 分析表的构造方法
+     */
+    public enum Method {
+        /** 在 LR(0) 自动机上按 follow 集合规约 */
+        SLR1,
+        /** 在 LR(0) 自动机上按 DeRemer-Pennello 方法传播的向前看符号规约, 状态数与 SLR(1) 相同 */
+        LALR1,
+        /** 规范 LR(1) 自动机, 能力最强, 但状态数可能成倍增长 */
+        LR1
+    }
+
+    /**
+     * 一次构造的统计信息
+     *
+     * @param method      构造方法
+     * @param statusCount 状态数
+     * @param millis      构造耗时, 单位为毫秒
+     */
+    public record Report(Method method, int statusCount, double millis) {
+        @Override
+        public String toString() {
+            return "%s: %d states in %.3f ms".formatted(method, statusCount, millis);
+        }
+    }
+
     public TableGenerator() {
-        this.productions = GrammarInfo.getProductionsInOrder();
+        this(false);
+    }
+
+    /**
+     * @param flattenLists 是否将右递归的列表改写为左递归, 使语法分析时的栈深度不随列表长度增长
+     * @see #flattenLists(List)
+     */
+    public TableGenerator(boolean flattenLists) {
+        this(flattenLists, Method.SLR1);
+    }
+
+    /**
+     * @param flattenLists 是否将右递归的列表改写为左递归, 使语法分析时的栈深度不随列表长度增长
+     * @param method       分析表的构造方法
+     * @see #flattenLists(List)
+     */
+    public TableGenerator(boolean flattenLists, Method method) {
+        this.method = method;
+        this.productions = flattenLists
+            ? flattenLists(GrammarInfo.getProductionsInOrder())
+            : GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
 
@@ -27,11 +74,35 @@ public class TableGenerator {
      * 主体方法
      */
     public void run() {
+        final var start = System.nanoTime();
+        encode();
         calcFirst();
-        calcFollow();
-        constructDFA();
-        dumpItems();
+        constructDFA(method == Method.LR1);
+        if (method == Method.SLR1) {
+            calcFollow();
+        } else if (method == Method.LALR1) {
+            calcLookaheads();
+        }
         genTable();
+        report = new Report(method, allStatusInIndexOrder.size(), (System.nanoTime() - start) / 1e6);
+        dumpItems();
+    }
+
+    /**
+     * 设置是否并行地构造 LR 自动机. 开启后, BFS 每一层的状态在线程池中并行地求闭包与后继状态, 构造出的状态及其编号与顺序构造时相同.
+     * 状态较少的层仍然顺序展开.
+     *
+     * @param pool 线程池, 为 null 时关闭并行构造 (默认)
+     */
+    public void setParallelConstruction(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return 最近一次 run 的状态数与耗时, 尚未 run 时为 null
+     */
+    public Report getReport() {
+        return report;
     }
 
     /**
@@ -41,8 +112,12 @@ public class TableGenerator {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+            final var reduceOn = method == Method.SLR1 ? Map.<Integer, BitSet>of() : reduceLookaheads.get(status.index());
+            for (final var item : stateItems.get(status.index())) {
+                final var lookahead = itemSymbols[item] < 0 ? reduceOn.get(itemProductions[item]) : null;
+                lines.add(lookahead == null
+                    ? "    " + describeItem(item)
+                    : "    %s, %s".formatted(describeItem(item), terminalsOf(lookahead)));
             }
         }
 
@@ -56,6 +131,53 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    /**
+     * 获取编译后的分析表
+     *
+     * @param elideUnitProductions 是否消除单产生式, 开启后形如 {@code A -> B} 的规约链由驱动程序一步跳过
+     * @return 编译后的分析表
+     * @see CompiledTable#compile(LRTable, boolean)
+     */
+    public CompiledTable getCompiledTable(boolean elideUnitProductions) {
+        return CompiledTable.compile(getTable(), elideUnitProductions);
+    }
+
+    /**
+     * 将形如 {@code L -> alpha L} 与 {@code L -> alpha} 的右递归列表改写为 {@code L -> L alpha} 与 {@code L -> alpha}.
+     * <br>
+     * 右递归的列表要等到整个列表都移进之后才能开始规约, 所以栈深度与列表长度成正比; 改写为左递归后每个元素移进完毕就立即规约,
+     * 栈深度保持不变. 改写出的产生式编号接在文法文件中的产生式之后, 驱动程序会把对它的规约推迟并还原为原文法的规约序列,
+     * 所以观察者看到的规约序列与原文法相同.
+     *
+     * @param original 文法文件中的产生式
+     * @return 改写后的产生式
+     * @see CompiledTable
+     */
+    private static List<Production> flattenLists(List<Production> original) {
+        final var result = new ArrayList<>(original);
+        int nextIndex = original.stream().mapToInt(Production::index).max().orElse(0) + 1;
+        for (int idx = 0; idx < result.size(); idx++) {
+            final var recursive = result.get(idx);
+            final var head = recursive.head();
+            final var body = recursive.body();
+            if (body.size() < 2 || !body.get(body.size() - 1).equals(head)) {
+                continue;
+            }
+            final var alpha = body.subList(0, body.size() - 1);
+            final var sameHead = original.stream().filter(production -> production.head().equals(head)).toList();
+            final var isList = sameHead.size() == 2 && !alpha.contains(head)
+                && sameHead.stream().anyMatch(production -> production.body().equals(alpha));
+            if (isList) {
+                final var flattened = new ArrayList<Term>();
+                flattened.add(head);
+                flattened.addAll(alpha);
+                result.set(idx, new Production(nextIndex++, head, flattened));
+            }
+        }
+        return result;
+    }
+
+    private final Method method;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
@@ -79,6 +201,10 @@ public class TableGenerator {
             calcFirst(nonTerminal);
         }
 
+        firstBits = new BitSet[symbols.size()];
+        for (int symbol = 0; symbol < symbols.size(); symbol++) {
+            firstBits[symbol] = bitsOf(first.get(symbols.get(symbol)));
+        }
     }
 
     /**
@@ -94,17 +220,15 @@ public class TableGenerator {
         }
 
         final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
-                }
+        // 以该非终结符为头的产生式
+        for (final var production : productionsByHead[symbolIds.get(nonTerminal)]) {
+            final var firstSymbol = productions.get(production).body().get(0);
+            // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
+            if (!visited.contains(firstSymbol)) {
+                // 随后递归查找该产生式体的第一个文法符号的 first 集合
+                // 它的 first 集合也是该非终结符的 first 集合
+                visited.add(firstSymbol);
+                result.addAll(calcFirst(firstSymbol));
             }
         }
 
@@ -142,25 +266,20 @@ public class TableGenerator {
         }
 
         final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
-
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
-
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
-                }
-            }
-
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
+        // 起始符号之后只能是 EOF
+        if (nonTerminal.equals(productions.get(0).head())) {
+            result.add(TokenKind.eof());
+        }
+        // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
+        // 我们直接枚举点后面为该非终结符的每个项目
+        for (final var item : itemsBefore[symbolIds.get(nonTerminal)]) {
+            final var next = itemSymbols[item + 1];
+            if (next >= 0) {
+                // 后面跟着的符号的 first 就是它的 follow
+                result.addAll(first.get(symbols.get(next)));
+            } else {
+                // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
+                final var head = productions.get(itemProductions[item]).head();
                 if (visited.contains(head)) {
                     // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
                     // 这时候 EOF 也可能是它的 Follow
@@ -177,234 +296,567 @@ public class TableGenerator {
         return result;
     }
 
+    //==================== 以下为 LR 自动机的构造 ==============================//
+    // 文法符号与项目都以 int 编码. 文法符号的编号即其在 symbols 中的位置, 非终结符在前, 终结符在后.
+    // 产生式的编号为其在 productions 中的位置, 产生式 p 的点位于 dot 处的项目编号为 itemBase[p] + dot,
+    // 所以项目 item 的后继项目就是 item + 1. 状态按其核 (初始状态为起始项目, 其余状态为点不在开头的项目) 去重,
+    // 每个状态的闭包与各文法符号上的转移都只求一次.
+
+    private List<Term> symbols;
+    private Map<Term, Integer> symbolIds;
+    private int nonTerminalCount;
+    /** 以产生式编号为下标, 该产生式第一个项目的编号 */
+    private int[] itemBase;
+    /** 以项目编号为下标, 项目所属的产生式编号 */
+    private int[] itemProductions;
+    /** 以项目编号为下标, 点后面的文法符号编号, 点在末尾时为 -1 */
+    private int[] itemSymbols;
+    /** 以非终结符编号为下标, 以其为头部的产生式编号 */
+    private int[][] productionsByHead;
+    /** 以非终结符编号为下标, 点后面为该非终结符的项目 */
+    private int[][] itemsBefore;
+    /** 以终结符的编号为下标, 其 first 集合; 以非终结符编号为下标, 其 first 集合. 集合中终结符的位置为码点 + 1 */
+    private BitSet[] firstBits;
+
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    /** 以状态编号为下标, 状态的闭包中的项目 */
+    private final List<int[]> stateItems = new ArrayList<>();
+    /** 以状态编号为下标, 状态的转移, 依次存放文法符号与目标状态编号, 按文法符号编号升序排列 */
+    private final List<int[]> stateEdges = new ArrayList<>();
+    /** 按 LALR(1) 或 LR(1) 构造时, 以状态编号为下标, 各可规约的产生式的向前看符号 */
+    private final List<Map<Integer, BitSet>> reduceLookaheads = new ArrayList<>();
+    private Report report = null;
+    /** 并行构造时的线程池 */
+    private ForkJoinPool pool = null;
+    /** 少于该数量的一层状态顺序展开 */
+    private static final int PARALLEL_THRESHOLD = 64;
+
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     * 状态的核, 用于状态去重. LR(0) 时 lookaheads 为 null
      *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * @param items      按编号升序排列的项目
+     * @param lookaheads 与 items 对应的向前看符号
+     * @param hash       预先求出的散列值, 并行构造时在工作线程上求出
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
-        }
-
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
-            }
+    private record Kernel(int[] items, BitSet[] lookaheads, int hash) {
+        Kernel(int[] items, BitSet[] lookaheads) {
+            this(items, lookaheads, Arrays.hashCode(items) * 31 + Arrays.hashCode(lookaheads));
         }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
-            }
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel
+                && hash == kernel.hash
+                && Arrays.equals(items, kernel.items)
+                && Arrays.equals(lookaheads, kernel.lookaheads);
         }
 
         @Override
-        public String toString() {
-            final var builder = new StringBuilder();
+        public int hashCode() {
+            return hash;
+        }
+    }
 
-            builder.append(production.head());
-            builder.append(" -> ");
+    /**
+     * 展开一个状态的结果
+     *
+     * @param items      闭包中的项目
+     * @param reduceOn   构造 LR(1) 自动机时, 各可规约的产生式的向前看符号
+     * @param symbols    有转移的文法符号, 按编号升序排列
+     * @param successors 与 symbols 对应的后继状态的核
+     */
+    private record Expansion(int[] items, Map<Integer, BitSet> reduceOn, int[] symbols, Kernel[] successors) {
+    }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
-                }
-                builder.append(" ").append(body.get(i));
+    /**
+     * 可增长的 int 数组
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
+            values[size++] = value;
+        }
 
-            if (dot == body.size()) {
-                builder.append(" .");
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * 为文法符号, 产生式与项目编号
+     */
+    private void encode() {
+        symbols = new ArrayList<>();
+        symbols.addAll(nonTerminals);
+        symbols.addAll(terminals);
+        nonTerminalCount = nonTerminals.size();
+        symbolIds = new HashMap<>();
+        for (int idx = 0; idx < symbols.size(); idx++) {
+            symbolIds.put(symbols.get(idx), idx);
+        }
+
+        itemBase = new int[productions.size()];
+        final var itemCount = productions.stream().mapToInt(production -> production.body().size() + 1).sum();
+        itemProductions = new int[itemCount];
+        itemSymbols = new int[itemCount];
+        final var byHead = new IntList[nonTerminalCount];
+        int item = 0;
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            itemBase[p] = item;
+            for (final var term : production.body()) {
+                itemProductions[item] = p;
+                itemSymbols[item++] = symbolIds.get(term);
+            }
+            itemProductions[item] = p;
+            itemSymbols[item++] = -1;
+            final var head = symbolIds.get(production.head());
+            if (byHead[head] == null) {
+                byHead[head] = new IntList();
             }
+            byHead[head].add(p);
+        }
+        productionsByHead = new int[nonTerminalCount][];
+        for (int head = 0; head < nonTerminalCount; head++) {
+            productionsByHead[head] = byHead[head] == null ? new int[0] : byHead[head].toArray();
+        }
 
-            return builder.toString();
+        itemsBefore = new int[nonTerminalCount][];
+        final var before = new IntList[nonTerminalCount];
+        for (int idx = 0; idx < itemSymbols.length; idx++) {
+            final var symbol = itemSymbols[idx];
+            if (symbol >= 0 && symbol < nonTerminalCount) {
+                if (before[symbol] == null) {
+                    before[symbol] = new IntList();
+                }
+                before[symbol].add(idx);
+            }
+        }
+        for (int symbol = 0; symbol < nonTerminalCount; symbol++) {
+            itemsBefore[symbol] = before[symbol] == null ? new int[0] : before[symbol].toArray();
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    private static BitSet bitsOf(Collection<TokenKind> terminals) {
+        final var bits = new BitSet();
+        terminals.forEach(terminal -> bits.set(terminal.getCode() + 1));
+        return bits;
+    }
+
+    private static List<TokenKind> terminalsOf(BitSet bits) {
+        return bits.stream().mapToObj(column -> TokenKind.fromCode(column - 1)).toList();
+    }
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 构造 LR(0) 或 LR(1) 自动机的所有状态, 相当于理论课中的规范项目集族
+     * <br>
+     * 按 BFS 的顺序逐层展开状态: 对每个状态求出其闭包, 再扫描一遍闭包中的项目, 按点后面的文法符号分组得到各后继状态的核.
+     * 一层中的各状态展开完毕后, 再按状态编号与文法符号的顺序查找或创建后继状态, 所以状态的编号与逐个文法符号求 GO(I, X) 时相同.
+     * 设置了线程池时, 同一层的各状态在线程池中并行展开, 编号仍在当前线程上按上述顺序进行, 因此与顺序构造的结果完全相同.
+     *
+     * @param withLookaheads 是否构造 LR(1) 自动机
+     * @see #setParallelConstruction(ForkJoinPool)
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
-
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+    private void constructDFA(boolean withLookaheads) {
+        final var belongTo = new HashMap<Kernel, Integer>();
+        final var kernels = new ArrayList<Kernel>();
+        final var init = new Kernel(new int[]{itemBase[0]},
+            withLookaheads ? new BitSet[]{bitsOf(List.of(TokenKind.eof()))} : null);
+        belongTo.put(init, 0);
+        kernels.add(init);
+
+        final var expander = new Expander(withLookaheads);
+        final var expanders = ThreadLocal.withInitial(() -> new Expander(withLookaheads));
+        int levelStart = 0;
+        while (levelStart < kernels.size()) {
+            final var level = List.copyOf(kernels.subList(levelStart, kernels.size()));
+            final List<Expansion> expansions = pool == null || level.size() < PARALLEL_THRESHOLD
+                ? level.stream().map(expander::expand).toList()
+                : pool.submit(() -> level.parallelStream().map(kernel -> expanders.get().expand(kernel)).toList()).join();
+
+            for (final var expansion : expansions) {
+                final var successors = expansion.successors();
+                final var edges = new int[successors.length * 2];
+                for (int idx = 0; idx < successors.length; idx++) {
+                    var target = belongTo.get(successors[idx]);
+                    if (target == null) {
+                        target = kernels.size();
+                        belongTo.put(successors[idx], target);
+                        kernels.add(successors[idx]);
+                    }
+                    edges[idx * 2] = expansion.symbols()[idx];
+                    edges[idx * 2 + 1] = target;
+                }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+                allStatusInIndexOrder.add(Status.create(allStatusInIndexOrder.size()));
+                stateItems.add(expansion.items());
+                stateEdges.add(edges);
+                reduceLookaheads.add(expansion.reduceOn());
+            }
+            levelStart += level.size();
         }
     }
 
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * 求状态的闭包与后继状态的核, 各数组在多次展开之间复用, 所以每个线程各用一个
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private final class Expander {
+        private final boolean withLookaheads;
+        // 闭包中的项目及其向前看符号; 以项目编号为下标, 该项目在当前闭包中的位置, 仅当 stamp 为当前轮次时有效
+        private final IntList items = new IntList();
+        private final List<BitSet> lookaheads = new ArrayList<>();
+        private final int[] positions = new int[itemProductions.length];
+        private final int[] itemStamps = new int[itemProductions.length];
+        // 以文法符号编号为下标, 点后面为该符号的项目在闭包中的位置
+        private final IntList[] groups = new IntList[symbols.size()];
+        private final int[] groupStamps = new int[symbols.size()];
+        private final IntList touched = new IntList();
+        private int stamp = 0;
+
+        Expander(boolean withLookaheads) {
+            this.withLookaheads = withLookaheads;
+        }
+
+        Expansion expand(Kernel kernel) {
+            final var stamp = ++this.stamp;
+            items.clear();
+            lookaheads.clear();
+            for (int idx = 0; idx < kernel.items().length; idx++) {
+                final var item = kernel.items()[idx];
+                itemStamps[item] = stamp;
+                positions[item] = items.size();
+                items.add(item);
+                lookaheads.add(withLookaheads ? kernel.lookaheads()[idx] : null);
+            }
+
+            // 求闭包: 对 A -> alpha . B beta, 加入所有 B -> . gamma; LR(1) 时其向前看符号为 first(beta a)
+            final var unexpanded = new ArrayDeque<Integer>();
+            for (int idx = 0; idx < items.size(); idx++) {
+                unexpanded.add(idx);
+            }
+            while (!unexpanded.isEmpty()) {
+                final int position = unexpanded.pollFirst();
+                final var item = items.get(position);
+                final var symbol = itemSymbols[item];
+                if (symbol < 0 || symbol >= nonTerminalCount) {
+                    continue;
+                }
+                // 没有空产生式, 所以 beta 非空时 first(beta a) 就是 beta 第一个符号的 first 集合
+                final var lookahead = !withLookaheads ? null
+                    : itemSymbols[item + 1] >= 0 ? firstBits[itemSymbols[item + 1]] : lookaheads.get(position);
+                for (final var production : productionsByHead[symbol]) {
+                    final var start = itemBase[production];
+                    if (itemStamps[start] != stamp) {
+                        itemStamps[start] = stamp;
+                        positions[start] = items.size();
+                        items.add(start);
+                        lookaheads.add(withLookaheads ? (BitSet) lookahead.clone() : null);
+                        unexpanded.add(positions[start]);
+                    } else if (withLookaheads) {
+                        // 向前看符号增加时需要重新展开该项目
+                        final var existing = lookaheads.get(positions[start]);
+                        final var before = existing.cardinality();
+                        existing.or(lookahead);
+                        if (existing.cardinality() != before) {
+                            unexpanded.add(positions[start]);
+                        }
+                    }
+                }
+            }
+
+            // 按点后面的文法符号分组
+            touched.clear();
+            final var reduceOn = new HashMap<Integer, BitSet>();
+            for (int position = 0; position < items.size(); position++) {
+                final var item = items.get(position);
+                final var symbol = itemSymbols[item];
+                if (symbol < 0) {
+                    if (withLookaheads) {
+                        reduceOn.put(itemProductions[item], lookaheads.get(position));
+                    }
+                    continue;
+                }
+                if (groupStamps[symbol] != stamp) {
+                    groupStamps[symbol] = stamp;
+                    if (groups[symbol] == null) {
+                        groups[symbol] = new IntList();
+                    }
+                    groups[symbol].clear();
+                    touched.add(symbol);
+                }
+                groups[symbol].add(position);
+            }
+
+            // 按文法符号的顺序求各后继状态的核
+            final var symbolOrder = touched.toArray();
+            Arrays.sort(symbolOrder);
+            final var successors = new Kernel[symbolOrder.length];
+            for (int idx = 0; idx < symbolOrder.length; idx++) {
+                final var group = groups[symbolOrder[idx]];
+                final var next = new Integer[group.size()];
+                for (int k = 0; k < group.size(); k++) {
+                    next[k] = group.get(k);
+                }
+                Arrays.sort(next, Comparator.comparingInt(items::get));
+                final var nextItems = new int[next.length];
+                final var nextLookaheads = withLookaheads ? new BitSet[next.length] : null;
+                for (int k = 0; k < next.length; k++) {
+                    nextItems[k] = items.get(next[k]) + 1;
+                    if (withLookaheads) {
+                        nextLookaheads[k] = (BitSet) lookaheads.get(next[k]).clone();
+                    }
+                }
+                successors[idx] = new Kernel(nextItems, nextLookaheads);
+            }
+            return new Expansion(items.toArray(), reduceOn, symbolOrder, successors);
+        }
     }
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
-     *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * @return 状态 state 在文法符号 symbol 上的转移在 stateEdges 中的序号, 没有该转移时为 -1
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+    private int edgeOf(int state, int symbol) {
+        final var edges = stateEdges.get(state);
+        int low = 0;
+        int high = edges.length / 2 - 1;
+        while (low <= high) {
+            final var mid = (low + high) >>> 1;
+            final var current = edges[mid * 2];
+            if (current == symbol) {
+                return mid;
+            } else if (current < symbol) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
         }
+        return -1;
+    }
 
-        return result;
+    private int targetOf(int state, int symbol) {
+        return stateEdges.get(state)[edgeOf(state, symbol) * 2 + 1];
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * 按 DeRemer-Pennello 方法在 LR(0) 自动机上求 LALR(1) 的向前看符号
+     * <br>
+     * 对每个非终结符上的转移 (p, A), 先求直接读入集 DR(p, A), 即 GO(p, A) 中可以移进的终结符; 若 GO(p, A) 中有 S -> S' . 则还有 EOF.
+     * 若有产生式 B -> beta A, 且 p' 经 beta 到达 p, 则 (p, A) includes (p', B), 即 Follow(p, A) 包含 Follow(p', B).
+     * Follow 在 includes 关系上用 digraph 算法求出, 每条关系只访问一次. 最后若 p' 经 alpha 到达 q, 则 q 中 A -> alpha . 的向前看符号
+     * 包含 Follow(p', A).
+     * <br>
+     * 与 calcFirst 一样, 这里假定文法中没有空产生式, 所以 reads 关系为空, Read 集合就是 DR 集合.
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+    private void calcLookaheads() {
+        // 转移 (p, X) 的编号为 edgeBase[p] 加上它在 stateEdges 中的序号, 只用到非终结符上的转移
+        final var stateCount = allStatusInIndexOrder.size();
+        final var edgeBase = new int[stateCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            edgeBase[state + 1] = edgeBase[state] + stateEdges.get(state).length / 2;
+        }
+
+        // 直接读入集
+        final var acceptState = targetOf(0, symbolIds.get(productions.get(0).body().get(0)));
+        final var follows = new BitSet[edgeBase[stateCount]];
+        for (int state = 0; state < stateCount; state++) {
+            final var edges = stateEdges.get(state);
+            for (int k = 0; k * 2 < edges.length && edges[k * 2] < nonTerminalCount; k++) {
+                final var to = edges[k * 2 + 1];
+                final var read = new BitSet();
+                final var toEdges = stateEdges.get(to);
+                for (int j = 0; j * 2 < toEdges.length; j++) {
+                    if (toEdges[j * 2] >= nonTerminalCount) {
+                        read.set(((TokenKind) symbols.get(toEdges[j * 2])).getCode() + 1);
+                    }
+                }
+                if (to == acceptState) {
+                    read.set(TokenKind.eof().getCode() + 1);
+                }
+                follows[edgeBase[state] + k] = read;
+            }
+        }
+
+        // 沿每条产生式从 p' 走到 q, 同时得到 includes 与 lookback 关系
+        final var includes = new IntList[follows.length];
+        final var lookbackStates = new IntList();
+        final var lookbackProductions = new IntList();
+        final var lookbackEdges = new IntList();
+        for (int source = 0; source < stateCount; source++) {
+            final var edges = stateEdges.get(source);
+            for (int k = 0; k * 2 < edges.length && edges[k * 2] < nonTerminalCount; k++) {
+                final var x = edgeBase[source] + k;
+                for (final var production : productionsByHead[edges[k * 2]]) {
+                    final var length = productions.get(production).body().size();
+                    var state = source;
+                    for (int i = 0; i < length; i++) {
+                        final var symbol = itemSymbols[itemBase[production] + i];
+                        if (i == length - 1 && symbol < nonTerminalCount) {
+                            final var y = edgeBase[state] + edgeOf(state, symbol);
+                            if (includes[y] == null) {
+                                includes[y] = new IntList();
+                            }
+                            includes[y].add(x);
+                        }
+                        state = targetOf(state, symbol);
+                    }
+                    lookbackStates.add(state);
+                    lookbackProductions.add(production);
+                    lookbackEdges.add(x);
+                }
+            }
+        }
+
+        digraph(includes, follows);
+        for (int idx = 0; idx < lookbackStates.size(); idx++) {
+            reduceLookaheads.get(lookbackStates.get(idx))
+                .computeIfAbsent(lookbackProductions.get(idx), key -> new BitSet())
+                .or(follows[lookbackEdges.get(idx)]);
+        }
     }
 
     /**
-     * 构造 LR(0) 规范项目集族
+     * DeRemer-Pennello 的 digraph 算法: 求 F(x) = F'(x) 并上所有 x R y 的 F(y).
+     * 按深度优先遍历关系, 同一个强连通分量中的元素在回溯到分量的根时一次性得到相同的结果
      *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
+     * @param relation 以元素编号为下标, 与之有关系 R 的元素, 没有时可以为 null
+     * @param sets     以元素编号为下标, 初始为 F'(x), 结束时为 F(x); 不参与关系的元素可以为 null
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
-
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
-                }
+    private static void digraph(IntList[] relation, BitSet[] sets) {
+        final var depths = new int[sets.length];
+        final var stack = new IntList();
+        for (int x = 0; x < sets.length; x++) {
+            if (sets[x] != null && depths[x] == 0) {
+                traverse(x, relation, sets, depths, stack);
             }
         }
+    }
 
-        return new ArrayList<>(result);
+    private static void traverse(int x, IntList[] relation, BitSet[] sets, int[] depths, IntList stack) {
+        stack.add(x);
+        final var depth = stack.size();
+        depths[x] = depth;
+        final var related = relation[x];
+        for (int idx = 0; related != null && idx < related.size(); idx++) {
+            final var y = related.get(idx);
+            if (depths[y] == 0) {
+                traverse(y, relation, sets, depths, stack);
+            }
+            depths[x] = Math.min(depths[x], depths[y]);
+            sets[x].or(sets[y]);
+        }
+        if (depths[x] == depth) {
+            // x 是强连通分量的根, 分量中的其余元素都在栈中 x 之上
+            int top;
+            do {
+                top = stack.removeLast();
+                depths[top] = Integer.MAX_VALUE;
+                if (top != x) {
+                    sets[top] = (BitSet) sets[x].clone();
+                }
+            } while (top != x);
+        }
     }
 
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
-        // 依索引顺序对每个状态的每个项目
+        final var followBits = new HashMap<NonTerminal, BitSet>();
+        if (method == Method.SLR1) {
+            follow.forEach((nonTerminal, set) -> followBits.put((NonTerminal) nonTerminal, bitsOf(set)));
+        }
+
+        // 依索引顺序对每个状态
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
-                        }
-                    }
+            final var state = status.index();
+
+            // 点后面跟着文法符号的项目: 终结符则移入该终结符, 非终结符则转移到 GO(I, B) 对应的状态中去
+            final var edges = stateEdges.get(state);
+            for (int k = 0; k * 2 < edges.length; k++) {
+                final var symbol = symbols.get(edges[k * 2]);
+                final var next = allStatusInIndexOrder.get(edges[k * 2 + 1]);
+                if (symbol instanceof TokenKind tokenKind) {
+                    status.setAction(tokenKind, Action.shift(next));
+                } else if (symbol instanceof NonTerminal nonTerminal) {
+                    status.setGoto(nonTerminal, next);
+                } else {
+                    throw new RuntimeException("Unknown type of Term");
+                }
+            }
 
+            // 点在末尾的项目
+            for (final var item : stateItems.get(state)) {
+                if (itemSymbols[item] >= 0) {
+                    continue;
+                }
+                final var p = itemProductions[item];
+                final var production = productions.get(p);
+                if (p == 0) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
+                    // A -> alpha .
+                    // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
+                    // 按 LALR(1) 或 LR(1) 构造时则只在该项目的向前看符号上规约
+                    final var reduceOn = method == Method.SLR1
+                        ? followBits.get(production.head())
+                        : reduceLookaheads.get(state).get(p);
+                    for (final var a : terminalsOf(reduceOn)) {
+                        status.setAction(a, Action.reduce(production));
                     }
                 }
             }
         }
     }
 
+    /**
+     * @return 项目的文本形式, 对于 A -> B . C, 为 {@code A ->  B . C}
+     */
+    private String describeItem(int item) {
+        final var production = productions.get(itemProductions[item]);
+        final var dot = item - itemBase[itemProductions[item]];
+        final var builder = new StringBuilder();
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+
+        if (dot == body.size()) {
+            builder.append(" .");
+        }
+
+        return builder.toString();
+    }
+
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
 }
@@ -4,6 +4,8 @@ import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -11,13 +13,22 @@ import java.util.*;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * 所有符号的所有信息，但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 每个条目在加入时会获得一个从 0 开始连续分配的 id, 后续阶段可以直接用 id 作为数组下标, 而不必再对符号文本做散列.
+ * 条目按文本存放在一个开放寻址的散列表中, 词法分析器可以直接用源代码中的字节查找符号, 只有符号第一次出现时才会生成字符串.
  * @author HITSZ
  */
 public class SymbolTable {
-    private final Map<String, SymbolTableEntry> entries;
+    private final List<SymbolTableEntry> entries;
+    /** 开放寻址散列表, 存放条目的 id + 1, 0 表示空位 */
+    private int[] slots;
+    /** 各槽位中条目文本的散列值 */
+    private int[] slotHashes;
 
     public SymbolTable() {
-        this.entries = new HashMap<>();
+        this.entries = new ArrayList<>();
+        this.slots = new int[64];
+        this.slotHashes = new int[64];
     }
 
     /**
@@ -27,14 +38,68 @@ public class SymbolTable {
         TokenKind idKind = TokenKind.fromString("id");
         for (Token token : tokens) {
             if (token.getKind() == idKind) {
-                String tokenText = token.getText();
-                if (!hasSymbol(tokenText)) {
-                    entries.put(tokenText, addEntry(tokenText));
-                }
+                intern(token.getText());
             }
         }
     }
 
+    /**
+     * 查找符号, 若不存在则将其加入符号表
+     *
+     * @param text 符号的文本表示
+     * @return 该符号的 id
+     */
+    public int intern(String text) {
+        final var hash = text.hashCode();
+        int slot = findSlot(hash, text);
+        if (slots[slot] == 0) {
+            slot = insert(slot, hash, text);
+        }
+        return slots[slot] - 1;
+    }
+
+    /**
+     * 查找以 ASCII 字节给出的符号, 若不存在则将其加入符号表. 只有符号第一次出现时才会生成其字符串.
+     *
+     * @param bytes  符号所在的缓冲区
+     * @param start  符号在缓冲区中的起始下标
+     * @param length 符号的字节数
+     * @return 该符号的 id
+     */
+    public int intern(ByteBuffer bytes, int start, int length) {
+        // 对 ASCII 文本而言, 这与 String.hashCode 的结果相同
+        int hash = 0;
+        for (int idx = start; idx < start + length; idx++) {
+            hash = 31 * hash + (bytes.get(idx) & 0xff);
+        }
+        final int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == 0) {
+                final var text = new byte[length];
+                bytes.get(start, text);
+                final var inserted = insert(slot, hash, new String(text, StandardCharsets.US_ASCII));
+                return slots[inserted] - 1;
+            }
+            if (slotHashes[slot] == hash && matches(entries.get(slots[slot] - 1).getText(), bytes, start, length)) {
+                return slots[slot] - 1;
+            }
+        }
+    }
+
+    /**
+     * 将另一个符号表中的所有条目按 id 顺序加入本表
+     *
+     * @param other 另一个符号表
+     * @return 另一个符号表中的 id 到本表中 id 的映射
+     */
+    public int[] merge(SymbolTable other) {
+        final var mapping = new int[other.size()];
+        for (int id = 0; id < mapping.length; id++) {
+            mapping[id] = intern(other.get(id).getText());
+        }
+        return mapping;
+    }
+
     /**
      * 获取符号表中已有的条目
      *
@@ -44,13 +109,30 @@ public class SymbolTable {
      */
     public SymbolTableEntry get(String text) {
         if (hasSymbol(text)) {
-            return entries.get(text);
+            return entries.get(slots[findSlot(text.hashCode(), text)] - 1);
         }
         else {
             throw new RuntimeException("Symbol Doesn't Exist");
         }
     }
 
+    /**
+     * 按 id 获取符号表中已有的条目
+     *
+     * @param id 符号的 id
+     * @return 该符号在符号表中的条目
+     */
+    public SymbolTableEntry get(int id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return 符号表中的条目数, 也是下一个新条目的 id
+     */
+    public int size() {
+        return entries.size();
+    }
+
     /**
      * 在符号表中新增条目
      *
@@ -60,7 +142,7 @@ public class SymbolTable {
      */
     public SymbolTableEntry addEntry(String text) {
         if (!hasSymbol(text)) {
-            return new SymbolTableEntry(text);
+            return entries.get(intern(text));
         }
         else {
             throw new RuntimeException("Symbol Has Already In Table");
@@ -74,7 +156,7 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean hasSymbol(String text) {
-        return entries.containsKey(text);
+        return slots[findSlot(text.hashCode(), text)] != 0;
     }
 
     /**
@@ -82,7 +164,7 @@ public class SymbolTable {
      *
      * @return 符号表的所有条目
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
+    private List<SymbolTableEntry> getAllEntries() {
         return entries;
     }
 
@@ -92,7 +174,7 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
+        final var entriesInOrder = new ArrayList<>(getAllEntries());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
         final var lines = new ArrayList<String>();
         for (final var entry : entriesInOrder) {
@@ -100,5 +182,66 @@ public class SymbolTable {
         }
         FileUtils.writeLines(path, lines);
     }
-}
 
+    //==================== 散列表实现 ==============================//
+
+    /**
+     * @return 文本所在的槽位, 或查找结束时遇到的空槽位
+     */
+    private int findSlot(int hash, String text) {
+        final int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0 && !(slotHashes[slot] == hash && entries.get(slots[slot] - 1).getText().equals(text))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * 在空槽位中放入新条目, 必要时扩容
+     *
+     * @return 新条目所在的槽位
+     */
+    private int insert(int slot, int hash, String text) {
+        final var entry = new SymbolTableEntry(text, entries.size());
+        entries.add(entry);
+        slots[slot] = entry.getId() + 1;
+        slotHashes[slot] = hash;
+        if (entries.size() * 2 > slots.length) {
+            rehash();
+            return findSlot(hash, text);
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        slotHashes = new int[slotHashes.length * 2];
+        final int mask = slots.length - 1;
+        for (final var entry : entries) {
+            final var hash = entry.getText().hashCode();
+            int slot = spread(hash) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry.getId() + 1;
+            slotHashes[slot] = hash;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String text, ByteBuffer bytes, int start, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (text.charAt(idx) != (bytes.get(start + idx) & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
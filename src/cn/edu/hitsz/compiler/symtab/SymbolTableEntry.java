@@ -5,13 +5,16 @@ package cn.edu.hitsz.compiler.symtab;
  */
 public class SymbolTableEntry {
     private final String text;
+    private final int id;
     private SourceCodeType type;
 
     /**
      * @param text 符号的文本表示. 对于标识符符号, 该参数应该为标识符文本.
+     * @param id   符号在符号表中的 id
      */
-    public SymbolTableEntry(String text) {
+    public SymbolTableEntry(String text, int id) {
         this.text = text;
+        this.id = id;
         this.type = null;
     }
 
@@ -22,6 +25,13 @@ public class SymbolTableEntry {
         return text;
     }
 
+    /**
+     * @return 符号在符号表中的 id, 从 0 开始连续分配
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * @return 该标识符符号可以绑定到的源语言对象的类型
      */
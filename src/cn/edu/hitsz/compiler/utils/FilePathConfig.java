@@ -15,11 +15,21 @@ public final class FilePathConfig {
      */
     public static final String CODING_MAP_PATH = "data/in/coding_map.csv";
 
+    /**
+     * 词法规则 (各类词法单元的正则表达式)
+     */
+    public static final String TOKEN_SPEC_PATH = "data/in/token_spec.txt";
+
     /**
      * 语法文件
      */
     public final static String GRAMMAR_PATH = "data/in/grammar.txt";
 
+    /**
+     * 二元运算符的优先级
+     */
+    public final static String PRECEDENCE_PATH = "data/in/precedence.txt";
+
     /**
      * 第三方工具构造的 LR 分析表
      */
@@ -37,11 +47,21 @@ public final class FilePathConfig {
      */
     public static final String OLD_SYMBOL_TABLE = "data/out/old_symbol_table.txt";
 
+    /**
+     * 编译后的 LR 分析表的二进制缓存
+     */
+    public static final String TABLE_CACHE_PATH = "data/out/table_cache.bin";
+
     /**
      * 规约出的产生式列表
      */
     public static final String PARSER_PATH = "data/out/parser_list.txt";
 
+    /**
+     * 语法分析的执行记录
+     */
+    public static final String PARSER_TRACE_PATH = "data/out/parser_trace.txt";
+
     /**
      * 语义分析后的符号表
      */